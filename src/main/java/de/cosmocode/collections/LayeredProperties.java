@@ -0,0 +1,208 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.cosmocode.collections.utility.AbstractUtilityMap;
+import de.cosmocode.collections.utility.Utility;
+import de.cosmocode.collections.utility.UtilitySet;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A read-only {@link de.cosmocode.collections.utility.UtilityMap} view over an ordered
+ * list of named layers, e.g. properties files, system properties and overrides.
+ * Layers which are added later override the properties of earlier layers.
+ * Created by {@link MultiProperties#layered()}.
+ *
+ * <p>
+ *   Every layer is stored in its own immutable map. Lookups check the layers from
+ *   the top without any synchronization and without a merged copy of all layers.
+ *   Replacing a layer only copies the replaced layer. The view itself can't be modified,
+ *   only its layers can be added, replaced and removed.
+ * </p>
+ * <p>
+ *   Iterating over the view and {@link #size()} use a merged copy of all layers,
+ *   which is computed once after the layers changed.
+ * </p>
+ *
+ * @since 1.21
+ */
+@ThreadSafe
+public final class LayeredProperties extends AbstractUtilityMap<String, String> {
+
+    private final Object lock = new Object();
+
+    // written only while holding the lock
+    private volatile Layers layers = new Layers(ImmutableList.<String>of(),
+        ImmutableList.<ImmutableMap<String, String>>of());
+
+    LayeredProperties() {
+
+    }
+
+    /**
+     * Replaces the layer with the given name or adds it on top of all other layers,
+     * if there is no such layer.
+     *
+     * @param name the name of the layer
+     * @param properties the new properties of the layer, will be copied
+     * @return this view
+     * @throws NullPointerException if name or properties is null or properties contains null
+     */
+    public LayeredProperties setLayer(String name, Map<String, String> properties) {
+        Preconditions.checkNotNull(name, "Name");
+        final ImmutableMap<String, String> layer = ImmutableMap.copyOf(properties);
+        synchronized (lock) {
+            final List<String> names = Lists.newArrayList(layers.names);
+            final List<ImmutableMap<String, String>> maps = Lists.newArrayList(layers.maps);
+            final int index = names.indexOf(name);
+            if (index == -1) {
+                names.add(name);
+                maps.add(layer);
+            } else {
+                maps.set(index, layer);
+            }
+            layers = new Layers(ImmutableList.copyOf(names), ImmutableList.copyOf(maps));
+        }
+        return this;
+    }
+
+    /**
+     * Replaces the layer with the given name or adds it on top of all other layers,
+     * if there is no such layer.
+     *
+     * @param name the name of the layer
+     * @param properties the new properties of the layer, will be copied
+     * @return this view
+     * @throws NullPointerException if name or properties is null
+     */
+    public LayeredProperties setLayer(String name, Properties properties) {
+        return setLayer(name, Maps.fromProperties(properties));
+    }
+
+    /**
+     * Removes the layer with the given name.
+     *
+     * @param name the name of the layer
+     * @return true if the layer was removed, false if there was no such layer
+     */
+    public boolean removeLayer(String name) {
+        synchronized (lock) {
+            final int index = layers.names.indexOf(name);
+            if (index == -1) return false;
+            final List<String> names = Lists.newArrayList(layers.names);
+            final List<ImmutableMap<String, String>> maps = Lists.newArrayList(layers.maps);
+            names.remove(index);
+            maps.remove(index);
+            layers = new Layers(ImmutableList.copyOf(names), ImmutableList.copyOf(maps));
+            return true;
+        }
+    }
+
+    /**
+     * Returns the names of all layers, starting with the lowest priority.
+     *
+     * @return the names of all layers
+     */
+    public ImmutableList<String> getLayerNames() {
+        return layers.names;
+    }
+
+    /**
+     * Returns the layer with the given name.
+     *
+     * @param name the name of the layer
+     * @return the properties of the layer or null if there is no such layer
+     */
+    @Nullable
+    public ImmutableMap<String, String> getLayer(String name) {
+        final Layers current = layers;
+        final int index = current.names.indexOf(name);
+        return index == -1 ? null : current.maps.get(index);
+    }
+
+    @Override
+    public String get(Object key) {
+        final ImmutableList<ImmutableMap<String, String>> maps = layers.maps;
+        for (int i = maps.size() - 1; i >= 0; i--) {
+            final String value = maps.get(i).get(key);
+            if (value != null) return value;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Not supported, use {@link #setLayer(String, Map)} instead.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public String put(String key, String value) {
+        throw new UnsupportedOperationException("use setLayer(String, Map) instead");
+    }
+
+    @Override
+    public UtilitySet<Map.Entry<String, String>> entrySet() {
+        return Utility.asUtilitySet(layers.merged.get().entrySet());
+    }
+
+    /**
+     * An immutable state of all layers.
+     */
+    private static final class Layers {
+
+        private final ImmutableList<String> names;
+
+        private final ImmutableList<ImmutableMap<String, String>> maps;
+
+        private final Supplier<ImmutableMap<String, String>> merged;
+
+        public Layers(ImmutableList<String> names, final ImmutableList<ImmutableMap<String, String>> maps) {
+            this.names = names;
+            this.maps = maps;
+            this.merged = Suppliers.memoize(new Supplier<ImmutableMap<String, String>>() {
+
+                @Override
+                public ImmutableMap<String, String> get() {
+                    final Map<String, String> merged = Maps.newLinkedHashMap();
+                    for (ImmutableMap<String, String> map : maps) {
+                        merged.putAll(map);
+                    }
+                    return ImmutableMap.copyOf(merged);
+                }
+
+            });
+        }
+
+    }
+
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Extension of the {@link Properties} class which can load
@@ -78,4 +79,50 @@ public final class MultiProperties {
         return properties;
     }
 
+    /**
+     * Loads all of the given files in the supplied sequence and keeps them up to date
+     * using the returned {@link PropertiesWatcher}.
+     * 
+     * @since 1.21
+     * @param executor the executor used to parse files in parallel
+     * @param files the properties files to read from
+     * @return a new watcher, already containing all elements from the supplied files
+     * @throws NullPointerException if executor or files is null
+     * @throws IOException if {@link Properties#load(Reader)} failed
+     */
+    public static PropertiesWatcher watch(ExecutorService executor, File... files) throws IOException {
+        return watch(executor, Arrays.asList(files));
+    }
+
+    /**
+     * Loads all of the given files in the supplied sequence and keeps them up to date
+     * using the returned {@link PropertiesWatcher}. Call {@link PropertiesWatcher#refresh()}
+     * or schedule the watcher periodically to pick up changes.
+     * 
+     * @since 1.21
+     * @param executor the executor used to parse files in parallel
+     * @param files the properties files to read from
+     * @return a new watcher, already containing all elements from the supplied files
+     * @throws NullPointerException if executor or files is null
+     * @throws IOException if {@link Properties#load(Reader)} failed
+     */
+    public static PropertiesWatcher watch(ExecutorService executor, Iterable<? extends File> files) 
+        throws IOException {
+        final PropertiesWatcher watcher = new PropertiesWatcher(executor, files);
+        watcher.refresh();
+        return watcher;
+    }
+
+    /**
+     * Creates a new, empty {@link LayeredProperties} view. Use it instead of
+     * {@link #load(Iterable)} for frequently read properties whose sources are
+     * replaced independently of each other.
+     * 
+     * @since 1.21
+     * @return a new layered view without any layers
+     */
+    public static LayeredProperties layered() {
+        return new LayeredProperties();
+    }
+
 }
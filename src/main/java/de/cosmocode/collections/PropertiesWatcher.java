@@ -0,0 +1,263 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps the merged content of multiple properties files up to date.
+ * Created by {@link MultiProperties#watch(ExecutorService, Iterable)}.
+ *
+ * <p>
+ *   The merged content is kept in an immutable snapshot, which is replaced atomically
+ *   by {@link #refresh()}. Refreshing only parses files whose size or last modification
+ *   time changed, in parallel using the given executor. Listeners are notified with the
+ *   difference between the old and the new snapshot whenever the snapshot changes.
+ * </p>
+ * <p>
+ *   Changes are detected by polling. A watcher is a {@link Runnable}, so it can be
+ *   scheduled using a {@link java.util.concurrent.ScheduledExecutorService}.
+ * </p>
+ *
+ * @since 1.21
+ */
+@ThreadSafe
+public final class PropertiesWatcher implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertiesWatcher.class);
+
+    private final ImmutableList<File> files;
+
+    private final ExecutorService executor;
+
+    private final List<Procedure<? super MapDifference<String, String>>> listeners =
+        new CopyOnWriteArrayList<Procedure<? super MapDifference<String, String>>>();
+
+    private final Object lock = new Object();
+
+    @GuardedBy("lock")
+    private final Map<File, Loaded> loaded = Maps.newHashMap();
+
+    // written only while holding the lock
+    private volatile ImmutableMap<String, String> snapshot = ImmutableMap.of();
+
+    PropertiesWatcher(ExecutorService executor, Iterable<? extends File> files) {
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+        this.files = ImmutableList.copyOf(Preconditions.checkNotNull(files, "Files"));
+    }
+
+    /**
+     * Returns the current snapshot of all properties. Properties of later files
+     * override those of earlier files.
+     *
+     * @return the current snapshot
+     */
+    public ImmutableMap<String, String> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Copies the current snapshot into new {@link Properties}.
+     *
+     * @return new properties containing the current snapshot
+     */
+    public Properties toProperties() {
+        final Properties properties = new Properties();
+        properties.putAll(snapshot);
+        return properties;
+    }
+
+    /**
+     * Adds a listener, which will be notified with the difference between the old and
+     * the new snapshot whenever the snapshot changes. Listeners are called by the thread
+     * which refreshes this watcher.
+     *
+     * @param listener the listener to add
+     * @throws NullPointerException if listener is null
+     */
+    public void addListener(Procedure<? super MapDifference<String, String>> listener) {
+        listeners.add(Preconditions.checkNotNull(listener, "Listener"));
+    }
+
+    /**
+     * Removes a previously added listener.
+     *
+     * @param listener the listener to remove
+     * @return true if the listener was removed
+     */
+    public boolean removeListener(Procedure<? super MapDifference<String, String>> listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Parses all files which changed since the last refresh and publishes a new
+     * snapshot if any property changed. The current snapshot is kept if
+     * parsing any file fails.
+     *
+     * <p>
+     *   Changes are detected using the size and the last modification time of every file.
+     *   Changes which keep the size within the resolution of the file system timestamp
+     *   are therefore not detected.
+     * </p>
+     *
+     * @return true if the snapshot changed, false otherwise
+     * @throws IOException if reading any changed file failed
+     */
+    public boolean refresh() throws IOException {
+        final MapDifference<String, String> difference;
+        synchronized (lock) {
+            final Map<File, Future<Loaded>> futures = Maps.newHashMap();
+            try {
+                for (File file : ImmutableSet.copyOf(files)) {
+                    final Loaded current = loaded.get(file);
+                    if (current != null && current.isUpToDate()) continue;
+                    futures.put(file, executor.submit(new Load(file)));
+                }
+                for (Map.Entry<File, Future<Loaded>> entry : futures.entrySet()) {
+                    loaded.put(entry.getKey(), entry.getValue().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new IOException(e.getCause());
+            } finally {
+                for (Future<Loaded> future : futures.values()) {
+                    future.cancel(true);
+                }
+            }
+
+            if (futures.isEmpty()) return false;
+
+            final Map<String, String> merged = Maps.newLinkedHashMap();
+            for (File file : files) {
+                merged.putAll(loaded.get(file).properties);
+            }
+            final ImmutableMap<String, String> next = ImmutableMap.copyOf(merged);
+            difference = Maps.difference(snapshot, next);
+            if (difference.areEqual()) return false;
+            snapshot = next;
+
+            // notified while holding the lock, so listeners see changes in order
+            for (Procedure<? super MapDifference<String, String>> listener : listeners) {
+                try {
+                    listener.apply(difference);
+                } catch (RuntimeException e) {
+                    LOG.warn("Listener " + listener + " failed", e);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refreshes this watcher and logs failures.
+     */
+    @Override
+    public void run() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            LOG.warn("Unable to refresh " + this, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PropertiesWatcher " + files;
+    }
+
+    /**
+     * The parsed content of a file together with the size and modification
+     * time the file had before it was parsed.
+     */
+    private static final class Loaded {
+
+        private final File file;
+
+        private final long size;
+
+        private final long modified;
+
+        private final ImmutableMap<String, String> properties;
+
+        public Loaded(File file, long size, long modified, ImmutableMap<String, String> properties) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.properties = properties;
+        }
+
+        public boolean isUpToDate() {
+            return file.length() == size && file.lastModified() == modified;
+        }
+
+    }
+
+    /**
+     * Parses a single file.
+     */
+    private static final class Load implements Callable<Loaded> {
+
+        private final File file;
+
+        public Load(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public Loaded call() throws IOException {
+            // taken before reading, so changes during reading are detected by the next refresh
+            final long size = file.length();
+            final long modified = file.lastModified();
+            final Properties properties = new Properties();
+            final Reader reader = Files.newReader(file, Charsets.UTF_8);
+            try {
+                properties.load(reader);
+            } finally {
+                reader.close();
+            }
+            return new Loaded(file, size, modified, Maps.fromProperties(properties));
+        }
+
+    }
+
+}
@@ -15,7 +15,7 @@
  */
 package de.cosmocode.collections.tree;
 
-import com.google.common.collect.Iterators;
+import com.google.common.collect.Iterables;
 
 import java.beans.PropertyVetoException;
 import java.beans.VetoableChangeListener;
@@ -39,6 +39,8 @@ public abstract class AbstractTreeNode<E> implements TreeNode<E> {
     public static final String ERR_ADD_ANCESTOR = "Cannot add ancestor or this Node as a child";
     
     private VetoableChangeSupport vetoableChangeSupport;
+    
+    private AbstractTreeNode<E> keyedParent;
 
     /**
      * Fires a vetoable property change event to all registered listeners.
@@ -66,6 +68,75 @@ public abstract class AbstractTreeNode<E> implements TreeNode<E> {
         return vetoableChangeSupport;
     }
     
+    /**
+     * <p> Observes the data of the given child, as required by nodes which store their children by data.
+     * If the child is an AbstractTreeNode, {@link #rekeyChild(TreeNode, Object, Object)} of this node
+     * is called directly by {@link #setData(Object)} of the child, without any
+     * {@link java.beans.PropertyChangeEvent}s or listener lists. Otherwise the given listener is
+     * registered on the child.
+     * </p>
+     * 
+     * @param child the child to observe
+     * @param listener the listener to use for children which are no AbstractTreeNodes
+     */
+    void observe(final TreeNode<E> child, final VetoableChangeListener listener) {
+        if (child instanceof AbstractTreeNode<?>) {
+            ((AbstractTreeNode<E>) child).keyedParent = this;
+        } else {
+            child.addVetoableChangeListener(listener);
+        }
+    }
+    
+    /**
+     * Reverts {@link #observe(TreeNode, VetoableChangeListener)}.
+     * 
+     * @param child the observed child
+     * @param listener the listener to remove from children which are no AbstractTreeNodes
+     */
+    void unobserve(final TreeNode<E> child, final VetoableChangeListener listener) {
+        if (child instanceof AbstractTreeNode<?>) {
+            final AbstractTreeNode<E> node = (AbstractTreeNode<E>) child;
+            if (node.keyedParent == this) {
+                node.keyedParent = null;
+            }
+        } else {
+            child.removeVetoableChangeListener(listener);
+        }
+    }
+    
+    /**
+     * <p> Called before the vetoable change listeners of an observed child are asked to approve
+     * new data. Nodes which store their children by data reject duplicates here.
+     * The default implementation does nothing.
+     * </p>
+     * 
+     * @param child the child whose data is about to change
+     * @param oldData the current data of the child
+     * @param newData the new data of the child
+     * @throws PropertyVetoException if the new data is rejected
+     * @see #observe(TreeNode, VetoableChangeListener)
+     */
+    void checkRekey(final TreeNode<E> child, final E oldData, final E newData) throws PropertyVetoException {
+        // nothing to do
+    }
+    
+    /**
+     * <p> Called after the data of an observed child changed, or by the listener of children
+     * which are no AbstractTreeNodes before their data changes.
+     * Nodes which store their children by data update the key of the child here.
+     * The default implementation does nothing.
+     * </p>
+     * 
+     * @param child the child whose data changes
+     * @param oldData the previous data of the child
+     * @param newData the new data of the child
+     * @throws PropertyVetoException if the new data is rejected
+     * @see #observe(TreeNode, VetoableChangeListener)
+     */
+    void rekeyChild(final TreeNode<E> child, final E oldData, final E newData) throws PropertyVetoException {
+        // nothing to do
+    }
+    
     /**
      * <p> Tests the given TreeNode on its ability to become a child of this TreeNode.
      * Throws RuntimeExceptions if the given TreeNode is not an acceptable child.
@@ -150,8 +221,7 @@ public abstract class AbstractTreeNode<E> implements TreeNode<E> {
         } else if (index >= getNumberOfChildren()) {
             throw new IndexOutOfBoundsException("index >= number of children (" + getNumberOfChildren() + ")");
         } else {
-            final Iterator<TreeNode<E>> iterator = getChildren().iterator();
-            return Iterators.get(iterator, index);
+            return Iterables.get(getChildren(), index);
         }
     }
 
@@ -211,12 +281,22 @@ public abstract class AbstractTreeNode<E> implements TreeNode<E> {
     
     @Override
     public void setData(E data) throws PropertyVetoException {
-        // check all listeners on this node if they approve the new data
         final E oldData = getData();
+        
+        // let a parent which stores its children by data reject duplicates,
+        // before any listener approves a change which wouldn't happen
+        if (keyedParent != null) {
+            keyedParent.checkRekey(this, oldData, data);
+        }
+        
+        // check all listeners on this node if they approve the new data
         fireVetoableChange(DATA_PROPERTY, oldData, data);
         
-        // new data approved: do the update
+        // new data approved: do the update, the key is only moved if it succeeded
         setDataUnchecked(data);
+        if (keyedParent != null) {
+            keyedParent.rekeyChild(this, oldData, data);
+        }
     }
     
     /**
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import java.util.List;
+
+/**
+ * Combines the data of an inner {@link TreeNode} with the results
+ * of its children, as used by {@link Trees#fold(TreeNode, com.google.common.base.Function, Combiner)}.
+ *
+ * @param <E> the generic type of the data stored in the nodes
+ * @param <R> the generic type of the result
+ */
+public interface Combiner<E, R> {
+
+    /**
+     * Combines the data of a node with the results of its children.
+     *
+     * @param data the data of the current node
+     * @param children the results of the children, in the order of the children
+     * @return the result for the current node
+     */
+    R combine(E data, List<R> children);
+
+}
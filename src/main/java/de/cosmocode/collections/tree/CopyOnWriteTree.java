@@ -0,0 +1,260 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p> A thread-safe {@link Tree} for read-mostly workloads, which publishes every change
+ * as a new {@link PersistentTree} snapshot.
+ * </p>
+ * <p> Readers never wait for writers: {@link #getRoot()} and {@link #snapshot()} return the current
+ * snapshot, which never changes and can be traversed while writers publish new ones.
+ * The node views of a snapshot are created lazily: the first request for the children
+ * of a view locks that view once to create its child views, later requests don't lock.
+ * Use {@link #snapshot()} if several reads have to see the same version of the tree,
+ * because every method of the {@link Tree} interface reads the current snapshot anew.
+ * </p>
+ * <p> Writers are serialized by a single lock. Several changes should be batched
+ * using {@link #update(Function)}, which publishes all of them atomically as one new snapshot.
+ * Thanks to the structural sharing of {@link PersistentTree} a change only copies
+ * the path from the root to the changed node.
+ * </p>
+ * <p> The nodes returned by this tree are read-only views of a snapshot.
+ * The modifying methods of the {@link Tree} interface only accept nodes of the current snapshot.
+ * </p>
+ *
+ * @param <E> a generic type that indicates the data stored in the {@link TreeNode}s
+ */
+@ThreadSafe
+public final class CopyOnWriteTree<E> extends AbstractTree<E> {
+
+    private final Object lock = new Object();
+
+    // written only while holding lock, read without locking
+    private volatile PersistentTree<E> current;
+
+    private CopyOnWriteTree(PersistentTree<E> initial) {
+        this.current = initial;
+    }
+
+    /**
+     * Creates a new CopyOnWriteTree that consists only of a root node with the given data.
+     *
+     * @param <E> the generic type of the data
+     * @param rootData the data of the root node, may be null
+     * @return a new CopyOnWriteTree
+     */
+    public static <E> CopyOnWriteTree<E> of(E rootData) {
+        return new CopyOnWriteTree<E>(PersistentTree.of(rootData));
+    }
+
+    /**
+     * Creates a new CopyOnWriteTree whose first snapshot is a copy of the subtree below the given node.
+     *
+     * @param <E> the generic type of the data
+     * @param root the root of the subtree to copy
+     * @return a new CopyOnWriteTree
+     * @throws NullPointerException if root is null
+     */
+    public static <E> CopyOnWriteTree<E> copyOf(TreeNode<E> root) {
+        return new CopyOnWriteTree<E>(PersistentTree.copyOf(root));
+    }
+
+    /**
+     * Creates a new CopyOnWriteTree whose first snapshot is a copy of the given tree.
+     *
+     * @param <E> the generic type of the data
+     * @param tree the tree to copy
+     * @return a new CopyOnWriteTree
+     * @throws NullPointerException if tree is null
+     */
+    public static <E> CopyOnWriteTree<E> copyOf(Tree<E> tree) {
+        return new CopyOnWriteTree<E>(PersistentTree.copyOf(tree));
+    }
+
+    /**
+     * Returns the current snapshot of this tree. This method never blocks.
+     *
+     * @return the current snapshot
+     */
+    public PersistentTree<E> snapshot() {
+        return current;
+    }
+
+    /**
+     * <p> Applies the given function to the current snapshot and publishes its result
+     * as the new snapshot. Calls are serialized, so the function always sees
+     * the latest snapshot and no concurrent change gets lost.
+     * </p>
+     * <p> If the function throws an exception, no snapshot is published.
+     * The function should not block, because it delays all other writers.
+     * </p>
+     *
+     * @param batch the function which creates the new version from the current snapshot
+     * @return the published snapshot
+     * @throws NullPointerException if batch is null or returns null
+     */
+    public PersistentTree<E> update(Function<? super PersistentTree<E>, ? extends PersistentTree<E>> batch) {
+        Preconditions.checkNotNull(batch, "Batch");
+        synchronized (lock) {
+            final PersistentTree<E> next = Preconditions.checkNotNull(batch.apply(current), "Snapshot");
+            current = next;
+            return next;
+        }
+    }
+
+    @Override
+    public TreeNode<E> getRoot() {
+        return current.getRoot();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p> Publishes a copy of the subtree below the given node as the new snapshot.
+     * </p>
+     */
+    @Override
+    public void setRootElement(TreeNode<E> rootElement) {
+        final PersistentTree<E> copy = PersistentTree.copyOf(rootElement);
+        synchronized (lock) {
+            current = copy;
+        }
+    }
+
+    @Override
+    public TreeNode<E> addChild(final E childData) {
+        final PersistentTree<E> next = update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                return tree.addChild(tree.getRoot(), childData);
+            }
+
+        });
+        return next.getRoot().getChildAt(next.getRoot().getNumberOfChildren() - 1);
+    }
+
+    @Override
+    public List<TreeNode<E>> addChildren(final E... children) {
+        final PersistentTree<E> next = update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                PersistentTree<E> result = tree;
+                for (E child : children) {
+                    result = result.addChild(result.getRoot(), child);
+                }
+                return result;
+            }
+
+        });
+        final TreeNode<E> root = next.getRoot();
+        final int size = root.getNumberOfChildren();
+        final List<TreeNode<E>> added = Lists.newArrayListWithCapacity(children.length);
+        for (int i = size - children.length; i < size; i++) {
+            added.add(root.getChildAt(i));
+        }
+        return added;
+    }
+
+    @Override
+    public void addChildNode(final TreeNode<E> child) {
+        Preconditions.checkNotNull(child, "Child");
+        update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                return tree.addSubtree(tree.getRoot(), child);
+            }
+
+        });
+    }
+
+    @Override
+    public void insertChildAt(final int index, final TreeNode<E> child) {
+        Preconditions.checkNotNull(child, "Child");
+        update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                return tree.insertSubtree(tree.getRoot(), index, child);
+            }
+
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p> The child must be a node of the current snapshot, otherwise an
+     * {@link IllegalArgumentException} is thrown.
+     * </p>
+     */
+    @Override
+    public void removeChildNode(final TreeNode<E> child) {
+        update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                Preconditions.checkArgument(child != null && child.getParent() == tree.getRoot(),
+                    PersistentTree.ERR_FOREIGN_NODE);
+                return tree.remove(child);
+            }
+
+        });
+    }
+
+    @Override
+    public void removeChildAt(final int index) {
+        update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                return tree.remove(tree.getRoot().getChildAt(index));
+            }
+
+        });
+    }
+
+    @Override
+    public void setChildren(final Collection<TreeNode<E>> children) {
+        Preconditions.checkNotNull(children, "Children");
+        update(new Function<PersistentTree<E>, PersistentTree<E>>() {
+
+            @Override
+            public PersistentTree<E> apply(PersistentTree<E> tree) {
+                PersistentTree<E> result = PersistentTree.of(tree.getRoot().getData());
+                for (TreeNode<E> child : children) {
+                    result = result.addSubtree(result.getRoot(), child);
+                }
+                return result;
+            }
+
+        });
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+
+}
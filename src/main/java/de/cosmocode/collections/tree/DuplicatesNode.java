@@ -49,6 +49,9 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
     private E data;
     private List<TreeNode<E>> children;
     private TreeNode<E> parent;
+    
+    // cached result of getChildren(), reset on every modification of children
+    private transient ImmutableList<TreeNode<E>> snapshot;
  
     /**
      * Default constructor.
@@ -113,7 +116,18 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
     
     @Override
     public List<TreeNode<E>> getChildren() {
-        return ImmutableList.copyOf(this.children);
+        if (snapshot == null) {
+            snapshot = ImmutableList.copyOf(this.children);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Invalidates the cached result of {@link #getChildren()}.
+     * Must be called on every modification of children.
+     */
+    private void childrenChanged() {
+        snapshot = null;
     }
 
     @Override
@@ -124,6 +138,7 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
             if (child != null) child.setParent(null);
         }
         this.children.clear();
+        childrenChanged();
         for (TreeNode<E> child : children) {
             this.addChildNode(child);
         }
@@ -137,12 +152,14 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
     @Override
     protected void addChildNodeInternal(final TreeNode<E> child) {
         children.add(child);
+        childrenChanged();
     }
     
     @Override
     public DuplicatesNode<E> addChild(final E childData) {
         final DuplicatesNode<E> newNode = new DuplicatesNode<E>(this, childData);
         children.add(newNode);
+        childrenChanged();
         return newNode;
     }
     
@@ -158,6 +175,7 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
             
             // add child internal
             children.add(index, child);
+            childrenChanged();
         }
     }
     
@@ -174,6 +192,7 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
         while (childIter.hasNext()) {
             if (childIter.next() == child) {
                 childIter.remove();
+                childrenChanged();
                 child.setParent(null);
                 break;
             }
@@ -183,6 +202,7 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
     @Override
     public void removeChildAt(int index) throws IndexOutOfBoundsException {
         final TreeNode<E> child = children.remove(index);
+        childrenChanged();
         if (child != null) child.setParent(null);
     }
     
@@ -196,6 +216,7 @@ public class DuplicatesNode<E> extends AbstractTreeNode<E> implements Serializab
             }
             childIter.remove();
         }
+        childrenChanged();
     }
 
     @Override
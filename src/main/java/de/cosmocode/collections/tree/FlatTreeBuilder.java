@@ -0,0 +1,325 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.cosmocode.collections.tree.ImmutableNode.OneTimeDelegate;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> Builds {@link ImmutableNode} trees from flat rows, e.g. database rows of (id, parentId, data),
+ * in O(n) using a hash from id to row.
+ * </p>
+ * <p> Rows without a parent id become children of a synthetic root node.
+ * Children keep the order of the given rows. Rows which can't be attached
+ * are not reported by exceptions, but collected in the {@link Result}:
+ * </p>
+ * <ul>
+ *   <li> duplicates: rows whose id has already been used by a previous row </li>
+ *   <li> orphans: rows whose parent id belongs to no row </li>
+ *   <li> cycles: rows whose parent ids form a cycle </li>
+ * </ul>
+ * <p> Rows below orphans or cycles are not part of the tree either.
+ * </p>
+ *
+ * @param <R> the generic type of the rows
+ * @param <K> the generic type of the ids
+ * @param <E> the generic type of the data stored in the nodes
+ */
+@Immutable
+@ThreadSafe
+public final class FlatTreeBuilder<R, K, E> {
+
+    private static final int ROOT = -1;
+
+    private static final int ORPHAN = -2;
+
+    private final Function<? super R, ? extends K> id;
+
+    private final Function<? super R, ? extends K> parentId;
+
+    private final Function<? super R, ? extends E> data;
+
+    private FlatTreeBuilder(Function<? super R, ? extends K> id, Function<? super R, ? extends K> parentId,
+        Function<? super R, ? extends E> data) {
+        this.id = Preconditions.checkNotNull(id, "Id");
+        this.parentId = Preconditions.checkNotNull(parentId, "ParentId");
+        this.data = Preconditions.checkNotNull(data, "Data");
+    }
+
+    /**
+     * Creates a new FlatTreeBuilder using the given functions.
+     *
+     * @param <R> the generic type of the rows
+     * @param <K> the generic type of the ids
+     * @param <E> the generic type of the data stored in the nodes
+     * @param id the function which returns the (non-null) id of a row
+     * @param parentId the function which returns the id of the parent of a row, or null for top-level rows
+     * @param data the function which returns the data of the node of a row
+     * @return a new FlatTreeBuilder
+     * @throws NullPointerException if any parameter is null
+     */
+    public static <R, K, E> FlatTreeBuilder<R, K, E> of(Function<? super R, ? extends K> id,
+        Function<? super R, ? extends K> parentId, Function<? super R, ? extends E> data) {
+        return new FlatTreeBuilder<R, K, E>(id, parentId, data);
+    }
+
+    /**
+     * Builds a tree from the given rows.
+     *
+     * @param rootData the data of the synthetic root node
+     * @param rows the rows, iterated once
+     * @return the result, containing the root node and all rows which could not be attached
+     * @throws NullPointerException if rows is null or the id of any row is null
+     */
+    public Result<R, E> build(E rootData, Iterable<? extends R> rows) {
+        Preconditions.checkNotNull(rows, "Rows");
+
+        // collect rows and index them by id
+        final List<R> list = Lists.newArrayList(rows);
+        final int size = list.size();
+        final Map<K, Integer> indices = Maps.newHashMapWithExpectedSize(size);
+        final ImmutableList.Builder<R> duplicates = ImmutableList.builder();
+        final boolean[] valid = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            final K key = Preconditions.checkNotNull(id.apply(list.get(i)), "Id of %s", list.get(i));
+            if (indices.containsKey(key)) {
+                duplicates.add(list.get(i));
+            } else {
+                indices.put(key, i);
+                valid[i] = true;
+            }
+        }
+
+        // link parents and children, children are stored as first child/next sibling to keep the order
+        final int[] parents = new int[size];
+        final int[] firstChild = new int[size];
+        final int[] lastChild = new int[size];
+        final int[] nextSibling = new int[size];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        final List<Integer> topLevel = Lists.newArrayList();
+        final ImmutableList.Builder<R> orphans = ImmutableList.builder();
+
+        for (int i = 0; i < size; i++) {
+            if (!valid[i]) continue;
+            final K key = parentId.apply(list.get(i));
+            if (key == null) {
+                parents[i] = ROOT;
+                topLevel.add(i);
+                continue;
+            }
+            final Integer parent = indices.get(key);
+            if (parent == null) {
+                parents[i] = ORPHAN;
+                orphans.add(list.get(i));
+            } else {
+                parents[i] = parent;
+                if (firstChild[parent] == -1) {
+                    firstChild[parent] = i;
+                } else {
+                    nextSibling[lastChild[parent]] = i;
+                }
+                lastChild[parent] = i;
+            }
+        }
+        indices.clear();
+
+        // build bottom up, inner nodes use a OneTimeDelegate as parent of their children
+        @SuppressWarnings("unchecked")
+        final TreeNode<E>[] nodes = (TreeNode<E>[]) new TreeNode<?>[size];
+        @SuppressWarnings("unchecked")
+        final OneTimeDelegate<E>[] delegates = (OneTimeDelegate<E>[]) new OneTimeDelegate<?>[size];
+        final boolean[] reached = new boolean[size];
+        final OneTimeDelegate<E> rootDelegate = new OneTimeDelegate<E>();
+
+        final int[] stack = new int[2 * size];
+        int top = 0;
+        for (int i = topLevel.size() - 1; i >= 0; i--) {
+            stack[top++] = topLevel.get(i);
+        }
+
+        while (top > 0) {
+            final int current = stack[--top];
+            if (current >= 0) {
+                // pre order: visit children first
+                reached[current] = true;
+                stack[top++] = ~current;
+                if (firstChild[current] != -1) {
+                    delegates[current] = new OneTimeDelegate<E>();
+                    for (int child = firstChild[current]; child != -1; child = nextSibling[child]) {
+                        stack[top++] = child;
+                    }
+                }
+            } else {
+                // post order: all children are built
+                final int index = ~current;
+                final TreeNode<E> parent = parents[index] == ROOT ? rootDelegate : delegates[parents[index]];
+                final ImmutableNode<E> node = new ImmutableNode<E>(parent, data.apply(list.get(index)),
+                    children(nodes, firstChild[index], nextSibling));
+                nodes[index] = node;
+                if (delegates[index] != null) {
+                    delegates[index].setDelegate(node);
+                    delegates[index] = null;
+                }
+            }
+        }
+
+        final ImmutableList.Builder<TreeNode<E>> rootChildren = ImmutableList.builder();
+        for (int index : topLevel) {
+            rootChildren.add(nodes[index]);
+        }
+        final ImmutableNode<E> root = new ImmutableNode<E>(null, rootData, rootChildren.build());
+        rootDelegate.setDelegate(root);
+
+        return new Result<R, E>(root, orphans.build(), cycles(list, valid, reached, parents), duplicates.build());
+    }
+
+    private static <E> ImmutableList<TreeNode<E>> children(TreeNode<E>[] nodes, int first, int[] nextSibling) {
+        if (first == -1) return ImmutableList.of();
+        final ImmutableList.Builder<TreeNode<E>> builder = ImmutableList.builder();
+        for (int child = first; child != -1; child = nextSibling[child]) {
+            builder.add(nodes[child]);
+            nodes[child] = null;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Finds all rows which are part of a cycle by following the parents of all unreached rows.
+     */
+    private static <R> ImmutableList<R> cycles(List<R> rows, boolean[] valid, boolean[] reached, int[] parents) {
+        final ImmutableList.Builder<R> cycles = ImmutableList.builder();
+        // 0 = unvisited, 1 = on the current path, 2 = done
+        final byte[] state = new byte[rows.size()];
+        final List<Integer> path = Lists.newArrayList();
+
+        for (int i = 0; i < rows.size(); i++) {
+            if (!valid[i] || reached[i] || state[i] != 0) continue;
+
+            int current = i;
+            while (current >= 0 && state[current] == 0) {
+                state[current] = 1;
+                path.add(current);
+                current = parents[current];
+            }
+            if (current >= 0 && state[current] == 1) {
+                final int start = path.lastIndexOf(current);
+                for (int index : path.subList(start, path.size())) {
+                    cycles.add(rows.get(index));
+                }
+            }
+            for (int index : path) {
+                state[index] = 2;
+            }
+            path.clear();
+        }
+        return cycles.build();
+    }
+
+    @Override
+    public String toString() {
+        return "FlatTreeBuilder.of(" + id + ", " + parentId + ", " + data + ")";
+    }
+
+    /**
+     * The result of {@link FlatTreeBuilder#build(Object, Iterable)}.
+     *
+     * @param <R> the generic type of the rows
+     * @param <E> the generic type of the data stored in the nodes
+     */
+    @Immutable
+    public static final class Result<R, E> {
+
+        private final ImmutableNode<E> root;
+
+        private final ImmutableList<R> orphans;
+
+        private final ImmutableList<R> cycles;
+
+        private final ImmutableList<R> duplicates;
+
+        private Result(ImmutableNode<E> root, ImmutableList<R> orphans, ImmutableList<R> cycles,
+            ImmutableList<R> duplicates) {
+            this.root = root;
+            this.orphans = orphans;
+            this.cycles = cycles;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * Returns the synthetic root node, whose children are all rows without a parent id.
+         *
+         * @return the root node
+         */
+        public ImmutableNode<E> getRoot() {
+            return root;
+        }
+
+        /**
+         * Returns all rows whose parent id belongs to no row, in the order of the input.
+         *
+         * @return all orphans
+         */
+        public ImmutableList<R> getOrphans() {
+            return orphans;
+        }
+
+        /**
+         * Returns all rows whose parent ids form a cycle.
+         *
+         * @return all rows which are part of a cycle
+         */
+        public ImmutableList<R> getCycles() {
+            return cycles;
+        }
+
+        /**
+         * Returns all rows whose id has already been used by a previous row, in the order of the input.
+         *
+         * @return all duplicates
+         */
+        public ImmutableList<R> getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Checks whether all rows are part of the tree.
+         *
+         * @return true if there are neither orphans, cycles nor duplicates
+         */
+        public boolean isComplete() {
+            return orphans.isEmpty() && cycles.isEmpty() && duplicates.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Result [orphans=" + orphans + ", cycles=" + cycles + ", duplicates=" + duplicates + "]";
+        }
+
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> Ordered children of a {@link UniqueNode} or {@link MergeNode}, keyed by their data.
+ * </p>
+ * <p> The children are stored in an array list of slots and indexed by data in a hash map.
+ * Keyed lookups and positional reads are O(1), inserts and removals at a position
+ * only shift the array. Every slot remembers its position, which is renumbered lazily:
+ * all slots before {@code validUpTo} are known to have correct positions, so a burst of
+ * inserts at arbitrary positions costs no renumbering until a removal by key needs it.
+ * </p>
+ * <p> This class is not thread-safe.
+ * </p>
+ *
+ * @param <E> the generic type of the data stored in the children
+ */
+final class IndexedChildren<E> implements Serializable {
+
+    private static final long serialVersionUID = 3046137493406153357L;
+
+    private final List<Slot<E>> slots = Lists.newArrayList();
+
+    private final Map<E, Slot<E>> index = Maps.newHashMap();
+
+    private transient List<TreeNode<E>> view;
+
+    private int validUpTo;
+
+    public int size() {
+        return slots.size();
+    }
+
+    public boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    public TreeNode<E> get(Object key) {
+        final Slot<E> slot = index.get(key);
+        return slot == null ? null : slot.node;
+    }
+
+    public TreeNode<E> getAt(int position) {
+        return slots.get(position).node;
+    }
+
+    /**
+     * Returns an unmodifiable, live view of the children in their order.
+     *
+     * @return all children
+     */
+    public List<TreeNode<E>> values() {
+        if (view == null) {
+            view = Collections.unmodifiableList(Lists.transform(slots, IndexedChildren.<E>toNode()));
+        }
+        return view;
+    }
+
+    /**
+     * Associates the given node with the given key. An existing child with
+     * the same key is replaced at its position, otherwise the node is appended.
+     *
+     * @param key the key
+     * @param node the node
+     */
+    public void put(E key, TreeNode<E> node) {
+        final Slot<E> existing = index.get(key);
+        if (existing == null) {
+            final Slot<E> slot = new Slot<E>(key, node);
+            slot.position = slots.size();
+            if (validUpTo == slots.size()) {
+                validUpTo++;
+            }
+            slots.add(slot);
+            index.put(key, slot);
+        } else {
+            existing.node = node;
+        }
+    }
+
+    /**
+     * Inserts the given node at the given position. The key must not be present.
+     *
+     * @param position the position
+     * @param key the key
+     * @param node the node
+     */
+    public void insert(int position, E key, TreeNode<E> node) {
+        assert !index.containsKey(key) : "duplicate key " + key;
+        final Slot<E> slot = new Slot<E>(key, node);
+        slot.position = position;
+        slots.add(position, slot);
+        index.put(key, slot);
+        validUpTo = Math.min(validUpTo, position);
+    }
+
+    /**
+     * Removes the child associated with the given key.
+     *
+     * @param key the key
+     * @return the removed node or null if there was no such child
+     */
+    public TreeNode<E> remove(Object key) {
+        final Slot<E> slot = index.remove(key);
+        if (slot == null) return null;
+        final int position = positionOf(slot);
+        slots.remove(position);
+        validUpTo = Math.min(validUpTo, position);
+        return slot.node;
+    }
+
+    public void clear() {
+        slots.clear();
+        index.clear();
+        validUpTo = 0;
+    }
+
+    private int positionOf(Slot<E> slot) {
+        if (slot.position < validUpTo && slots.get(slot.position) == slot) {
+            return slot.position;
+        }
+        for (int i = validUpTo; i < slots.size(); i++) {
+            final Slot<E> current = slots.get(i);
+            current.position = i;
+            validUpTo = i + 1;
+            if (current == slot) return i;
+        }
+        throw new IllegalStateException("slot for " + slot.key + " is not part of " + this);
+    }
+
+    @Override
+    public String toString() {
+        return values().toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Function<Slot<E>, TreeNode<E>> toNode() {
+        return (Function<Slot<E>, TreeNode<E>>) (Function<?, ?>) ToNode.INSTANCE;
+    }
+
+    /**
+     * A single child with its key and its (possibly outdated) position.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class Slot<E> implements Serializable {
+
+        private static final long serialVersionUID = -5400380919346493417L;
+
+        private final E key;
+
+        private TreeNode<E> node;
+
+        private int position;
+
+        public Slot(E key, TreeNode<E> node) {
+            this.key = key;
+            this.node = node;
+        }
+
+    }
+
+    /**
+     * Function which extracts the node of a slot.
+     */
+    private static enum ToNode implements Function<Slot<Object>, TreeNode<Object>> {
+
+        INSTANCE;
+
+        @Override
+        public TreeNode<Object> apply(Slot<Object> from) {
+            return from.node;
+        }
+
+    }
+
+}
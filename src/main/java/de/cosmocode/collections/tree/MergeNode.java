@@ -15,16 +15,21 @@
  */
 package de.cosmocode.collections.tree;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.VetoableChangeListener;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -50,7 +55,7 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
     private static final long serialVersionUID = 1498524990314635637L;
     
     private T data;
-    private Map<T, TreeNode<T>> children;
+    private IndexedChildren<T> children;
     private TreeNode<T> parent;
  
     /**
@@ -106,14 +111,14 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
      */
     protected void initChildren() {
         if (children == null) {
-            children = Maps.newLinkedHashMap();
+            children = new IndexedChildren<T>();
         }
     }
     
     @Override
     protected void setThisAsParentOf(TreeNode<T> child) {
         super.setThisAsParentOf(child);
-        child.addVetoableChangeListener(this);
+        observe(child, this);
     }
     
     
@@ -149,21 +154,160 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
         return newChild;
     }
 
+    /**
+     * <p> Merges all given trees into a new MergeNode in a single pass.
+     * The result has the data of the first given node and its children are the
+     * (recursively merged) union of the children of all given nodes, in order of their first occurrence.
+     * </p>
+     * <p> In contrast to repeated calls of {@link #mergeNodes(TreeNode, TreeNode)} or
+     * {@link #addChildNode(TreeNode)}, every node of the result is created exactly once
+     * by grouping the children of all sources by their data. The given nodes are not modified.
+     * </p>
+     * 
+     * @param <T> a generic type that indicates the data stored in the nodes
+     * @param nodes the nodes to merge
+     * @return a new MergeNode containing the merged trees
+     * @throws NullPointerException if nodes is null or contains null
+     * @throws IllegalArgumentException if nodes is empty
+     */
+    public static <T> MergeNode<T> mergeAll(final Iterable<? extends TreeNode<T>> nodes) {
+        final List<TreeNode<T>> sources = checkSources(nodes);
+        final MergeNode<T> root = new MergeNode<T>(sources.get(0).getData());
+        mergeInto(root, sources);
+        return root;
+    }
+    
+    /**
+     * <p> Merges all given trees into a new MergeNode like {@link #mergeAll(Iterable)},
+     * but merges the subtrees below the top-level children in parallel using the given executor.
+     * The order of the children is the same as for {@link #mergeAll(Iterable)}.
+     * The given nodes must not be modified until this method returns.
+     * </p>
+     * 
+     * @param <T> a generic type that indicates the data stored in the nodes
+     * @param nodes the nodes to merge
+     * @param executor the executor which merges the top-level subtrees
+     * @return a new MergeNode containing the merged trees
+     * @throws NullPointerException if nodes or executor is null or nodes contains null
+     * @throws IllegalArgumentException if nodes is empty
+     * @throws com.google.common.util.concurrent.UncheckedExecutionException if a merge task failed
+     */
+    public static <T> MergeNode<T> mergeAll(final Iterable<? extends TreeNode<T>> nodes, 
+        final ExecutorService executor) {
+        
+        final List<TreeNode<T>> sources = checkSources(nodes);
+        Preconditions.checkNotNull(executor, "Executor");
+        final MergeNode<T> root = new MergeNode<T>(sources.get(0).getData());
+        
+        // create the top level in this thread to keep the order deterministic
+        final List<Future<?>> futures = Lists.newArrayList();
+        boolean completed = false;
+        try {
+            for (final Map.Entry<T, List<TreeNode<T>>> group : groupChildren(sources).entrySet()) {
+                final MergeNode<T> child = root.appendChild(group.getKey());
+                futures.add(executor.submit(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        mergeInto(child, group.getValue());
+                    }
+                    
+                }));
+            }
+            for (Future<?> future : futures) {
+                Futures.getUnchecked(future);
+            }
+            completed = true;
+            return root;
+        } finally {
+            if (!completed) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+    
+    private static <T> List<TreeNode<T>> checkSources(final Iterable<? extends TreeNode<T>> nodes) {
+        Preconditions.checkNotNull(nodes, "Nodes");
+        final List<TreeNode<T>> sources = Lists.newArrayList();
+        for (TreeNode<T> node : nodes) {
+            sources.add(Preconditions.checkNotNull(node, "Node"));
+        }
+        Preconditions.checkArgument(!sources.isEmpty(), "Nodes must not be empty");
+        return sources;
+    }
+    
+    /**
+     * Merges the children of all sources into the given target, iteratively.
+     * 
+     * @param <T> a generic type that indicates the data stored in the nodes
+     * @param target the (empty) target node
+     * @param sources the nodes whose children will be merged
+     */
+    private static <T> void mergeInto(final MergeNode<T> target, final List<TreeNode<T>> sources) {
+        final LinkedList<MergeNode<T>> targets = Lists.newLinkedList();
+        final LinkedList<List<TreeNode<T>>> pending = Lists.newLinkedList();
+        targets.push(target);
+        pending.push(sources);
+        
+        while (!targets.isEmpty()) {
+            final MergeNode<T> current = targets.pop();
+            for (Map.Entry<T, List<TreeNode<T>>> group : groupChildren(pending.pop()).entrySet()) {
+                targets.push(current.appendChild(group.getKey()));
+                pending.push(group.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Groups the children of all given nodes by their data, in order of their first occurrence.
+     * 
+     * @param <T> a generic type that indicates the data stored in the nodes
+     * @param nodes the nodes
+     * @return the children of all nodes grouped by data
+     */
+    private static <T> Map<T, List<TreeNode<T>>> groupChildren(final List<TreeNode<T>> nodes) {
+        final Map<T, List<TreeNode<T>>> groups = Maps.newLinkedHashMap();
+        for (final TreeNode<T> node : nodes) {
+            for (final TreeNode<T> child : node.getChildren()) {
+                List<TreeNode<T>> group = groups.get(child.getData());
+                if (group == null) {
+                    group = Lists.newArrayListWithCapacity(nodes.size());
+                    groups.put(child.getData(), group);
+                }
+                group.add(child);
+            }
+        }
+        return groups;
+    }
+
     @Override
     public TreeNode<T> addChild(final T childData) {
         initChildren();
         
-        TreeNode<T> child = children.get(childData);
+        final TreeNode<T> child = children.get(childData);
         if (child != null) {
             return child;
         } else {
-            child = new MergeNode<T>(this, childData);
-            children.put(childData, child);
-            child.addVetoableChangeListener(this);
-            return child;
+            return appendChild(childData);
         }
     }
     
+    /**
+     * Creates a new child with the given data and appends it. The data must not be present yet.
+     * 
+     * @param childData the data of the new child
+     * @return the new child
+     */
+    private MergeNode<T> appendChild(final T childData) {
+        initChildren();
+        final MergeNode<T> child = new MergeNode<T>(this, childData);
+        children.put(childData, child);
+        observe(child, this);
+        return child;
+    }
+    
     @Override
     protected void addChildNodeInternal(TreeNode<T> child) {
         initChildren();
@@ -194,7 +338,7 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
         if (children == null) {
             return Collections.emptySet();
         } else {
-            return Collections.unmodifiableCollection(children.values());
+            return children.values();
         }
     }
 
@@ -208,6 +352,16 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
         return children == null ? 0 : children.size();
     }
 
+    @Override
+    public TreeNode<T> getChildAt(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= getNumberOfChildren()) {
+            // produces the appropriate exception
+            return super.getChildAt(index);
+        } else {
+            return children.getAt(index);
+        }
+    }
+
     @Override
     public TreeNode<T> getParent() {
         return parent;
@@ -229,26 +383,7 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
             checkChildNode(child);
             setThisAsParentOf(child);
             
-            // go to index
-            int counter = index;
-            final Iterator<Map.Entry<T, TreeNode<T>>> iter = children.entrySet().iterator();
-            while (counter > 0 && iter.hasNext()) {
-                iter.next();
-                --counter;
-            }
-            
-            // create new map, put new element and all old elements into temporary map
-            final Map<T, TreeNode<T>> nextElements = Maps.newLinkedHashMap();
-            nextElements.put(child.getData(), child);
-            
-            while (iter.hasNext()) {
-                final Map.Entry<T, TreeNode<T>> elem = iter.next();
-                nextElements.put(elem.getKey(), elem.getValue());
-                iter.remove();
-            }
-            
-            // put all elements of temporary map back into children map
-            children.putAll(nextElements);
+            children.insert(index, child.getData(), child);
         }
     }
 
@@ -260,7 +395,7 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
         final TreeNode<T> myChild = children.remove(child.getData());
         if (myChild != null) {
             myChild.setParent(null);
-            myChild.removeVetoableChangeListener(this);
+            unobserve(myChild, this);
         }
     }
     
@@ -268,15 +403,13 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
     public void removeAllChildren() {
         if (children == null) return;
         
-        final Iterator<Map.Entry<T, TreeNode<T>>> entries = this.children.entrySet().iterator();
-        while (entries.hasNext()) {
-            final Map.Entry<T, TreeNode<T>> entry = entries.next();
-            if (entry.getValue() != null) {
-                entry.getValue().setParent(null);
-                entry.getValue().removeVetoableChangeListener(this);
+        for (final TreeNode<T> child : children.values()) {
+            if (child != null) {
+                child.setParent(null);
+                unobserve(child, this);
             }
-            entries.remove();
         }
+        children.clear();
     }
 
     @Override
@@ -285,7 +418,7 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
         if (child != null) {
             children.remove(child.getData());
             child.setParent(null);
-            child.removeVetoableChangeListener(this);
+            unobserve(child, this);
         }
     }
 
@@ -314,25 +447,31 @@ public class MergeNode<T> extends AbstractTreeNode<T> implements Serializable, V
     }
     
 
+    @Override
+    void rekeyChild(final TreeNode<T> child, final T oldData, final T newData) {
+        if (children == null || !children.containsKey(oldData)) return;
+        
+        if (children.containsKey(newData)) {
+            children.remove(oldData);
+            final TreeNode<T> otherChild = children.get(newData);
+            children.put(newData, mergeNodes(child, otherChild));
+        } else {
+            children.remove(oldData);
+            children.put(newData, child);
+        }
+    }
+
     @Override
     public void vetoableChange(PropertyChangeEvent evt) {
-        if (DATA_PROPERTY.equals(evt.getPropertyName())
-            && children.containsKey(evt.getOldValue())) {
-            
-            // this is one of our children
+        if (DATA_PROPERTY.equals(evt.getPropertyName())) {
+            // one of our children, which is no AbstractTreeNode, see observe(TreeNode, VetoableChangeListener)
             @SuppressWarnings("unchecked")
             final TreeNode<T> child = (TreeNode<T>) evt.getSource();
             @SuppressWarnings("unchecked")
+            final T oldData = (T) evt.getOldValue();
+            @SuppressWarnings("unchecked")
             final T newData = (T) evt.getNewValue();
-            
-            if (children.containsKey(newData)) {
-                children.remove(evt.getOldValue());
-                final TreeNode<T> otherChild = children.get(newData);
-                children.put(newData, mergeNodes(child, otherChild));
-            } else {
-                children.remove(evt.getOldValue());
-                children.put(newData, child);
-            }
+            rekeyChild(child, oldData, newData);
         }
     }
 
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> An index over the nodes of a tree by their path of data values, e.g.
+ * {@code ["electronics", "phones"]}. Paths are relative to the indexed root node,
+ * whose data is not part of any path. The empty path denotes the root itself.
+ * </p>
+ * <p> Every node stores its children in a hash map by data, so a lookup costs
+ * O(length of the path) instead of scanning the children on every level.
+ * If several siblings share the same data, only the first one is indexed.
+ * </p>
+ * <p> A PathIndex is a snapshot: changes of a mutable tree after the creation of the
+ * index are not reflected. Create a new index or use immutable trees in this case.
+ * </p>
+ *
+ * @param <E> the generic type of the data stored in the nodes
+ */
+@Immutable
+@ThreadSafe
+public final class PathIndex<E> {
+
+    private final Entry<E> root;
+
+    private PathIndex(Entry<E> root) {
+        this.root = root;
+    }
+
+    /**
+     * Creates a new index of the subtree below the given node.
+     *
+     * @param <E> the generic type of the data
+     * @param root the root of the subtree, does not need to be the root of a tree
+     * @return a new index
+     * @throws NullPointerException if root is null
+     */
+    public static <E> PathIndex<E> of(TreeNode<E> root) {
+        Preconditions.checkNotNull(root, "Root");
+        final Entry<E> entry = new Entry<E>(root);
+        final LinkedList<Entry<E>> stack = Lists.newLinkedList();
+        stack.push(entry);
+
+        while (!stack.isEmpty()) {
+            final Entry<E> current = stack.pop();
+            if (current.node.getNumberOfChildren() == 0) continue;
+
+            final Map<E, Entry<E>> children = Maps.newLinkedHashMap();
+            for (TreeNode<E> child : current.node.getChildren()) {
+                if (children.containsKey(child.getData())) continue;
+                final Entry<E> childEntry = new Entry<E>(child);
+                children.put(child.getData(), childEntry);
+                stack.push(childEntry);
+            }
+            current.children = children;
+        }
+
+        return new PathIndex<E>(entry);
+    }
+
+    /**
+     * Creates a new index of the given tree.
+     *
+     * @param <E> the generic type of the data
+     * @param tree the tree
+     * @return a new index
+     * @throws NullPointerException if tree is null
+     */
+    public static <E> PathIndex<E> of(Tree<E> tree) {
+        Preconditions.checkNotNull(tree, "Tree");
+        return of(tree.getRoot());
+    }
+
+    /**
+     * Returns the root node of this index.
+     *
+     * @return the root node
+     */
+    public TreeNode<E> getRoot() {
+        return root.node;
+    }
+
+    /**
+     * Returns the node at the given path.
+     *
+     * @param path the data of the nodes from below the root down to the requested node
+     * @return the node at the given path or null if there is no such node
+     * @throws NullPointerException if path is null
+     */
+    public TreeNode<E> get(Iterable<? extends E> path) {
+        final Entry<E> entry = find(path);
+        return entry == null ? null : entry.node;
+    }
+
+    /**
+     * Returns the node at the given path.
+     *
+     * @param path the data of the nodes from below the root down to the requested node
+     * @return the node at the given path or null if there is no such node
+     * @throws NullPointerException if path is null
+     */
+    public TreeNode<E> get(E... path) {
+        Preconditions.checkNotNull(path, "Path");
+        return get(Arrays.asList(path));
+    }
+
+    /**
+     * Checks whether there is a node at the given path.
+     *
+     * @param path the data of the nodes from below the root down to the requested node
+     * @return true if there is such a node, false otherwise
+     * @throws NullPointerException if path is null
+     */
+    public boolean contains(Iterable<? extends E> path) {
+        return find(path) != null;
+    }
+
+    /**
+     * Returns the paths of all nodes below the node at the given prefix, including
+     * the prefix itself, in pre order. The paths are computed lazily.
+     *
+     * @param prefix the path of the node to start with
+     * @return all paths starting with the given prefix, empty if there is no node at prefix
+     * @throws NullPointerException if prefix is null
+     */
+    public Iterable<List<E>> paths(Iterable<? extends E> prefix) {
+        final Entry<E> start = find(prefix);
+        if (start == null) {
+            return Collections.emptyList();
+        }
+
+        final List<E> startPath = Collections.unmodifiableList(Lists.newArrayList(prefix));
+        return new Iterable<List<E>>() {
+
+            @Override
+            public Iterator<List<E>> iterator() {
+                return new PathIterator<E>(start, startPath);
+            }
+
+            @Override
+            public String toString() {
+                return Iterables.toString(this);
+            }
+
+        };
+    }
+
+    private Entry<E> find(Iterable<? extends E> path) {
+        Preconditions.checkNotNull(path, "Path");
+        Entry<E> current = root;
+        for (E data : path) {
+            if (current.children == null) return null;
+            current = current.children.get(data);
+            if (current == null) return null;
+        }
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "PathIndex.of(" + root.node + ")";
+    }
+
+    /**
+     * An indexed node.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class Entry<E> {
+
+        private final TreeNode<E> node;
+
+        // null for leaves, only written during construction
+        private Map<E, Entry<E>> children;
+
+        public Entry(TreeNode<E> node) {
+            this.node = node;
+        }
+
+    }
+
+    /**
+     * Iterates over all paths below an entry in pre order.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class PathIterator<E> extends AbstractIterator<List<E>> {
+
+        private final LinkedList<Entry<E>> entries = Lists.newLinkedList();
+
+        private final LinkedList<List<E>> paths = Lists.newLinkedList();
+
+        public PathIterator(Entry<E> start, List<E> path) {
+            entries.push(start);
+            paths.push(path);
+        }
+
+        @Override
+        protected List<E> computeNext() {
+            if (entries.isEmpty()) {
+                return endOfData();
+            }
+
+            final Entry<E> entry = entries.pop();
+            final List<E> path = paths.pop();
+            if (entry.children != null) {
+                // push in reverse order to return the children in their original order
+                for (Map.Entry<E, Entry<E>> child : Lists.reverse(Lists.newArrayList(entry.children.entrySet()))) {
+                    entries.push(child.getValue());
+                    final List<E> childPath = Lists.newArrayListWithCapacity(path.size() + 1);
+                    childPath.addAll(path);
+                    childPath.add(child.getKey());
+                    paths.push(Collections.unmodifiableList(childPath));
+                }
+            }
+            return path;
+        }
+
+    }
+
+}
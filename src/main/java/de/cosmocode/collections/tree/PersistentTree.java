@@ -0,0 +1,605 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.beans.VetoableChangeListener;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * <p> A persistent {@link Tree} which never changes once created.
+ * Every modifying method returns a new version of the tree
+ * and leaves the current version untouched.
+ * </p>
+ * <p> Versions share structure: inserting, removing or relabeling a node
+ * only creates new nodes on the path from the root to the modified node,
+ * every other subtree is shared with the previous version.
+ * This makes modifications O(depth) instead of O(n), which allows
+ * cheap snapshots of large trees.
+ * </p>
+ * <p> The nodes returned by {@link #getRoot()} are read-only views, which throw an
+ * {@link UnsupportedOperationException} on every add-, insert-, set- and remove-method.
+ * Use the modifying methods of this class instead and pass the view
+ * of the node that should be changed. Views always belong to exactly one version.
+ * </p>
+ * <p> The stored data should be immutable, because hash codes are computed once
+ * when a node is created.
+ * </p>
+ *
+ * @param <E> a generic type that indicates the data stored in the {@link TreeNode}s
+ */
+@Immutable
+@ThreadSafe
+public final class PersistentTree<E> extends AbstractTree<E> {
+
+    public static final String ERR_FOREIGN_NODE = "given TreeNode is not part of this tree";
+
+    public static final String ERR_REMOVE_ROOT = "cannot remove the root node";
+
+    private final Node<E> rootNode;
+
+    private final View<E> rootView;
+
+    private PersistentTree(final Node<E> rootNode) {
+        this.rootNode = rootNode;
+        this.rootView = new View<E>(this, null, 0, rootNode);
+    }
+
+    /**
+     * Creates a new PersistentTree that consists only of a root node with the given data.
+     *
+     * @param <E> the generic type of the data
+     * @param rootData the data of the root node, may be null
+     * @return a new PersistentTree
+     */
+    public static <E> PersistentTree<E> of(final E rootData) {
+        return new PersistentTree<E>(Node.<E>leaf(rootData));
+    }
+
+    /**
+     * Creates a new PersistentTree by copying the whole structure below the given TreeNode.
+     * The given node becomes the root node of the new tree, regardless of its parent.
+     * This method is the only one that runs in O(n).
+     *
+     * @param <E> the generic type of the data
+     * @param root the node to copy
+     * @return a new PersistentTree which is equal to the given node
+     * @throws NullPointerException if root is null
+     */
+    public static <E> PersistentTree<E> copyOf(final TreeNode<E> root) {
+        Preconditions.checkNotNull(root, "Root");
+        return new PersistentTree<E>(copy(root));
+    }
+
+    /**
+     * Creates a new PersistentTree by copying the given tree.
+     *
+     * @param <E> the generic type of the data
+     * @param tree the tree to copy
+     * @return a new PersistentTree which is equal to the given tree
+     * @throws NullPointerException if tree is null
+     */
+    public static <E> PersistentTree<E> copyOf(final Tree<E> tree) {
+        Preconditions.checkNotNull(tree, "Tree");
+        if (tree instanceof PersistentTree<?>) {
+            return (PersistentTree<E>) tree;
+        } else {
+            return copyOf(tree.getRoot());
+        }
+    }
+
+    /**
+     * Copies the given node iteratively, so that deep trees can't overflow the stack.
+     *
+     * @param <E> the generic type of the data
+     * @param root the node to copy
+     * @return the copied node
+     */
+    private static <E> Node<E> copy(final TreeNode<E> root) {
+        final LinkedList<CopyFrame<E>> stack = Lists.newLinkedList();
+        stack.push(new CopyFrame<E>(root));
+        Node<E> result = null;
+
+        while (!stack.isEmpty()) {
+            final CopyFrame<E> frame = stack.peek();
+            if (frame.children.hasNext()) {
+                stack.push(new CopyFrame<E>(frame.children.next()));
+            } else {
+                stack.pop();
+                final Node<E> copied = new Node<E>(frame.source.getData(), frame.copies);
+                if (stack.isEmpty()) {
+                    result = copied;
+                } else {
+                    stack.peek().add(copied);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public TreeNode<E> getRoot() {
+        return rootView;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p> This method is not allowed by PersistentTree.</p>
+     */
+    @Override
+    public void setRootElement(TreeNode<E> rootElement) {
+        throw new UnsupportedOperationException("setRootElement not allowed by PersistentTree");
+    }
+
+    /**
+     * Returns the number of nodes in this tree, including the root node.
+     * This method runs in constant time.
+     *
+     * @return the number of nodes of this tree
+     */
+    public int size() {
+        return rootNode.size;
+    }
+
+    /**
+     * Returns a new version of this tree in which the given parent has
+     * an additional child with the given data as its last child.
+     *
+     * @param parent the parent node, as returned by this tree
+     * @param childData the data of the new child
+     * @return the new version of this tree
+     * @throws NullPointerException if parent is null
+     * @throws IllegalArgumentException if parent is not part of this tree
+     */
+    public PersistentTree<E> addChild(final TreeNode<E> parent, final E childData) {
+        final View<E> view = checkView(parent);
+        return insert(view, view.node.children.length, Node.<E>leaf(childData));
+    }
+
+    /**
+     * Returns a new version of this tree in which the given parent has
+     * an additional child with the given data at the specified position.
+     *
+     * @param parent the parent node, as returned by this tree
+     * @param index the position of the new child
+     * @param childData the data of the new child
+     * @return the new version of this tree
+     * @throws NullPointerException if parent is null
+     * @throws IllegalArgumentException if parent is not part of this tree
+     * @throws IndexOutOfBoundsException if (index < 0 || index > parent.getNumberOfChildren())
+     */
+    public PersistentTree<E> insertChild(final TreeNode<E> parent, final int index, final E childData) {
+        return insert(checkView(parent), index, Node.<E>leaf(childData));
+    }
+
+    /**
+     * Returns a new version of this tree in which a copy of the given subtree
+     * is appended to the children of the given parent.
+     *
+     * @param parent the parent node, as returned by this tree
+     * @param subtree the subtree to copy, may be part of any tree
+     * @return the new version of this tree
+     * @throws NullPointerException if parent or subtree is null
+     * @throws IllegalArgumentException if parent is not part of this tree
+     */
+    public PersistentTree<E> addSubtree(final TreeNode<E> parent, final TreeNode<E> subtree) {
+        final View<E> view = checkView(parent);
+        return insert(view, view.node.children.length, nodeOf(subtree));
+    }
+
+    /**
+     * Returns a new version of this tree in which a copy of the given subtree
+     * is inserted into the children of the given parent at the specified position.
+     *
+     * @param parent the parent node, as returned by this tree
+     * @param index the position of the new subtree
+     * @param subtree the subtree to copy, may be part of any tree
+     * @return the new version of this tree
+     * @throws NullPointerException if parent or subtree is null
+     * @throws IllegalArgumentException if parent is not part of this tree
+     * @throws IndexOutOfBoundsException if (index < 0 || index > parent.getNumberOfChildren())
+     */
+    public PersistentTree<E> insertSubtree(final TreeNode<E> parent, final int index, final TreeNode<E> subtree) {
+        return insert(checkView(parent), index, nodeOf(subtree));
+    }
+
+    /**
+     * Returns a new version of this tree without the given node and all of its descendants.
+     *
+     * @param node the node to remove, as returned by this tree
+     * @return the new version of this tree
+     * @throws NullPointerException if node is null
+     * @throws IllegalArgumentException if node is not part of this tree or if it is the root node
+     */
+    public PersistentTree<E> remove(final TreeNode<E> node) {
+        final View<E> view = checkView(node);
+        Preconditions.checkArgument(view.parent != null, ERR_REMOVE_ROOT);
+        return replace(view.parent, view.parent.node.without(view.index));
+    }
+
+    /**
+     * Returns a new version of this tree in which the given node carries the new data.
+     * The children of the node are shared with this version.
+     *
+     * @param node the node to relabel, as returned by this tree
+     * @param data the new data
+     * @return the new version of this tree
+     * @throws NullPointerException if node is null
+     * @throws IllegalArgumentException if node is not part of this tree
+     */
+    public PersistentTree<E> setData(final TreeNode<E> node, final E data) {
+        final View<E> view = checkView(node);
+        return replace(view, view.node.withData(data));
+    }
+
+    private PersistentTree<E> insert(final View<E> parent, final int index, final Node<E> child) {
+        final int size = parent.node.children.length;
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("index < 0");
+        } else if (index > size) {
+            throw new IndexOutOfBoundsException("index > number of children (" + size + ")");
+        }
+        return replace(parent, parent.node.with(index, child));
+    }
+
+    /**
+     * Copies the path from the given view up to the root, using the replacement
+     * instead of the node of the view. This is the only place where new versions are created.
+     *
+     * @param view the view whose node is replaced
+     * @param replacement the replacement node
+     * @return the new version of this tree
+     */
+    private PersistentTree<E> replace(final View<E> view, final Node<E> replacement) {
+        View<E> current = view;
+        Node<E> node = replacement;
+        while (current.parent != null) {
+            node = current.parent.node.replace(current.index, node);
+            current = current.parent;
+        }
+        return new PersistentTree<E>(node);
+    }
+
+    private View<E> checkView(final TreeNode<E> node) {
+        Preconditions.checkNotNull(node, "Node");
+        if (node instanceof View<?> && ((View<E>) node).tree == this) {
+            return (View<E>) node;
+        } else {
+            throw new IllegalArgumentException(ERR_FOREIGN_NODE);
+        }
+    }
+
+    private static <E> Node<E> nodeOf(final TreeNode<E> subtree) {
+        Preconditions.checkNotNull(subtree, "Subtree");
+        if (subtree instanceof View<?>) {
+            // nodes are immutable, so we can share them across trees
+            return ((View<E>) subtree).node;
+        } else {
+            return copy(subtree);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getRoot().toString();
+    }
+
+
+    /**
+     * The immutable, parentless node that is shared between versions.
+     *
+     * @param <E> the generic type of the data
+     */
+    static final class Node<E> {
+
+        private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+        private final E data;
+
+        private final Node<E>[] children;
+
+        private final int size;
+
+        private final int hash;
+
+        private Node(final E data, final Node<E>[] children) {
+            this.data = data;
+            this.children = children;
+
+            int sum = 1;
+            int childHash = 1;
+            for (Node<E> child : children) {
+                sum += child.size;
+                childHash = 31 * childHash + child.hash;
+            }
+            this.size = sum;
+
+            // same as AbstractTreeNode#hashCode(), so that equal nodes have equal hash codes
+            final int result = 31 + (data == null ? 0 : data.hashCode());
+            this.hash = 31 * result + childHash;
+        }
+
+        private Node(final E data, final List<Node<E>> children) {
+            this(data, children.toArray(Node.<E>newArray(children.size())));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E> Node<E>[] newArray(int length) {
+            return length == 0 ? (Node<E>[]) NO_CHILDREN : (Node<E>[]) new Node<?>[length];
+        }
+
+        static <E> Node<E> leaf(final E data) {
+            return new Node<E>(data, Node.<E>newArray(0));
+        }
+
+        E getData() {
+            return data;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int getNumberOfChildren() {
+            return children.length;
+        }
+
+        Node<E> getChildAt(int index) {
+            return children[index];
+        }
+
+        Node<E> withData(final E newData) {
+            return new Node<E>(newData, children);
+        }
+
+        Node<E> replace(int index, Node<E> child) {
+            final Node<E>[] copy = children.clone();
+            copy[index] = child;
+            return new Node<E>(data, copy);
+        }
+
+        Node<E> with(int index, Node<E> child) {
+            final Node<E>[] copy = newArray(children.length + 1);
+            System.arraycopy(children, 0, copy, 0, index);
+            copy[index] = child;
+            System.arraycopy(children, index, copy, index + 1, children.length - index);
+            return new Node<E>(data, copy);
+        }
+
+        Node<E> without(int index) {
+            final Node<E>[] copy = newArray(children.length - 1);
+            System.arraycopy(children, 0, copy, 0, index);
+            System.arraycopy(children, index + 1, copy, index, children.length - index - 1);
+            return new Node<E>(data, copy);
+        }
+
+        /**
+         * Compares this node and the other structurally. Shared subtrees are
+         * skipped by identity, differing subtrees are usually rejected by their hash code.
+         *
+         * @param other the other node
+         * @return true if both nodes are equal, false otherwise
+         */
+        boolean equalTo(final Node<?> other) {
+            final LinkedList<Node<?>> left = Lists.newLinkedList();
+            final LinkedList<Node<?>> right = Lists.newLinkedList();
+            left.push(this);
+            right.push(other);
+
+            while (!left.isEmpty()) {
+                final Node<?> l = left.pop();
+                final Node<?> r = right.pop();
+                if (l == r) continue;
+                if (l.hash != r.hash || l.children.length != r.children.length) return false;
+                if (!Objects.equal(l.data, r.data)) return false;
+                for (int i = 0; i < l.children.length; i++) {
+                    left.push(l.children[i]);
+                    right.push(r.children[i]);
+                }
+            }
+
+            return true;
+        }
+
+    }
+
+    /**
+     * Holds the state of a single node while copying a TreeNode.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class CopyFrame<E> {
+
+        private final TreeNode<E> source;
+
+        private final Iterator<TreeNode<E>> children;
+
+        private final List<Node<E>> copies;
+
+        public CopyFrame(final TreeNode<E> source) {
+            this.source = source;
+            this.children = source.getChildren().iterator();
+            this.copies = Lists.newArrayListWithCapacity(source.getNumberOfChildren());
+        }
+
+        public void add(final Node<E> copy) {
+            copies.add(copy);
+        }
+
+    }
+
+    /**
+     * <p> A read-only {@link TreeNode} view of a {@link Node} in a specific version.
+     * Views are created lazily, the first time the children of a view are requested.
+     * </p>
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class View<E> extends AbstractTreeNode<E> {
+
+        private final PersistentTree<E> tree;
+
+        private final View<E> parent;
+
+        private final int index;
+
+        private final Node<E> node;
+
+        private volatile ImmutableList<TreeNode<E>> children;
+
+        public View(final PersistentTree<E> tree, final View<E> parent, final int index, final Node<E> node) {
+            this.tree = tree;
+            this.parent = parent;
+            this.index = index;
+            this.node = node;
+        }
+
+        @Override
+        public TreeNode<E> getRoot() {
+            return tree.rootView;
+        }
+
+        @Override
+        public TreeNode<E> getParent() {
+            return parent;
+        }
+
+        @Override
+        public ImmutableList<TreeNode<E>> getChildren() {
+            ImmutableList<TreeNode<E>> result = children;
+            if (result == null) {
+                synchronized (this) {
+                    result = children;
+                    if (result == null) {
+                        final ImmutableList.Builder<TreeNode<E>> builder = ImmutableList.builder();
+                        for (int i = 0; i < node.children.length; i++) {
+                            builder.add(new View<E>(tree, this, i, node.children[i]));
+                        }
+                        result = builder.build();
+                        children = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public TreeNode<E> getChildAt(int childIndex) throws IndexOutOfBoundsException {
+            return getChildren().get(childIndex);
+        }
+
+        @Override
+        public int getNumberOfChildren() {
+            return node.children.length;
+        }
+
+        @Override
+        public E getData() {
+            return node.data;
+        }
+
+        @Override
+        public int hashCode() {
+            return node.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof View<?>) {
+                return node.equalTo(((View<?>) obj).node);
+            } else {
+                return super.equals(obj);
+            }
+        }
+
+        @Override
+        public void setParent(TreeNode<E> newParent) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public boolean changeParent(TreeNode<E> newParent) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void setChildren(Collection<TreeNode<E>> newChildren) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public List<TreeNode<E>> addChildren(E... newChildren) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public TreeNode<E> addChild(E childData) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void addChildNode(TreeNode<E> child) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void insertChildAt(int childIndex, TreeNode<E> child) throws IndexOutOfBoundsException {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void removeChildNode(TreeNode<E> child) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void removeChildAt(int childIndex) throws IndexOutOfBoundsException {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void removeAllChildren() {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void setData(E data) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void addVetoableChangeListener(VetoableChangeListener listener) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+        @Override
+        public void removeVetoableChangeListener(VetoableChangeListener listener) {
+            throw new UnsupportedOperationException("not allowed by PersistentTree");
+        }
+
+    }
+
+}
@@ -0,0 +1,423 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import de.cosmocode.commons.Codec;
+import de.cosmocode.commons.io.CloseableIterator;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * <p> A compact binary format for trees, which is independent of the node implementation.
+ * </p>
+ * <p> Nodes are written and read iteratively in pre order, so deep trees can't overflow the stack.
+ * After a short header every node is stored as its number of children and the length
+ * of its data, both as variable-length integers, followed by the data encoded using the
+ * {@link Codec} passed to {@link #TreeCodec(Codec)}, null data is supported.
+ * </p>
+ * <p> Reading methods never read beyond the end of a tree, but read the given stream
+ * byte-wise. Pass a buffered stream for best performance.
+ * </p>
+ *
+ * @param <E> the generic type of the data stored in the nodes
+ */
+@Immutable
+@ThreadSafe
+public final class TreeCodec<E> {
+
+    private static final int MAGIC = 0x43435452;
+
+    private static final int VERSION = 1;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final TreeCodec<String> STRINGS = new TreeCodec<String>(Utf8Codec.INSTANCE);
+
+    private final Codec<E, byte[]> codec;
+
+    /**
+     * Creates a new TreeCodec which encodes the data of every node using the given codec.
+     *
+     * @param codec the codec for the data of the nodes, must be thread-safe
+     * @throws NullPointerException if codec is null
+     */
+    public TreeCodec(Codec<E, byte[]> codec) {
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
+    }
+
+    /**
+     * Returns a TreeCodec for trees of strings, encoded as UTF-8.
+     *
+     * @return a TreeCodec for strings
+     */
+    public static TreeCodec<String> forStrings() {
+        return STRINGS;
+    }
+
+    /**
+     * Writes the subtree below the given node to the given stream.
+     * The stream is flushed, but not closed.
+     *
+     * @param root the root of the subtree, does not need to be the root of a tree
+     * @param stream the stream to write to
+     * @throws NullPointerException if root or stream is null
+     * @throws IOException if writing failed
+     */
+    public void write(TreeNode<E> root, OutputStream stream) throws IOException {
+        Preconditions.checkNotNull(root, "Root");
+        Preconditions.checkNotNull(stream, "Stream");
+
+        final OutputStream out = new BufferedOutputStream(stream);
+        writeInt(out, MAGIC);
+        out.write(VERSION);
+        writeNode(out, root);
+
+        final LinkedList<Iterator<TreeNode<E>>> stack = Lists.newLinkedList();
+        stack.push(root.getChildren().iterator());
+        while (!stack.isEmpty()) {
+            final Iterator<TreeNode<E>> iterator = stack.peek();
+            if (iterator.hasNext()) {
+                final TreeNode<E> node = iterator.next();
+                writeNode(out, node);
+                stack.push(node.getChildren().iterator());
+            } else {
+                stack.pop();
+            }
+        }
+        out.flush();
+    }
+
+    private void writeNode(OutputStream out, TreeNode<E> node) throws IOException {
+        writeVarInt(out, node.getNumberOfChildren());
+        final E data = node.getData();
+        if (data == null) {
+            writeVarInt(out, 0);
+        } else {
+            final byte[] bytes = codec.encode(data);
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a tree from the given stream into new {@link DuplicatesNode}s.
+     *
+     * @param stream the stream to read from
+     * @return the root of the read tree
+     * @throws NullPointerException if stream is null
+     * @throws IOException if reading failed or the stream contains no valid tree
+     */
+    public TreeNode<E> read(InputStream stream) throws IOException {
+        Preconditions.checkNotNull(stream, "Stream");
+        readHeader(stream);
+        final int children = readVarInt(stream);
+        final TreeNode<E> root = new DuplicatesNode<E>(readData(stream));
+        readChildren(stream, root, children);
+        return root;
+    }
+
+    /**
+     * <p> Reads a tree from the given stream and adds its root as a new child of the given parent,
+     * using {@link TreeNode#addChild(Object)} for every node. This way trees can be read
+     * into any node implementation, which keeps its usual semantics, e.g. a {@link MergeNode}
+     * merges read children with existing ones.
+     * </p>
+     *
+     * @param stream the stream to read from
+     * @param parent the node which will be the parent of the read tree
+     * @return the new child of parent, which is the root of the read tree
+     * @throws NullPointerException if stream or parent is null
+     * @throws IOException if reading failed or the stream contains no valid tree
+     */
+    public TreeNode<E> readInto(InputStream stream, TreeNode<E> parent) throws IOException {
+        Preconditions.checkNotNull(stream, "Stream");
+        Preconditions.checkNotNull(parent, "Parent");
+        readHeader(stream);
+        final int children = readVarInt(stream);
+        final TreeNode<E> root = parent.addChild(readData(stream));
+        readChildren(stream, root, children);
+        return root;
+    }
+
+    private void readChildren(InputStream in, TreeNode<E> root, int children) throws IOException {
+        final LinkedList<Frame<E>> stack = Lists.newLinkedList();
+        if (children > 0) {
+            stack.push(new Frame<E>(root, children));
+        }
+        while (!stack.isEmpty()) {
+            final Frame<E> frame = stack.peek();
+            if (frame.remaining == 0) {
+                stack.pop();
+                continue;
+            }
+            frame.remaining--;
+            final int count = readVarInt(in);
+            final TreeNode<E> child = frame.node.addChild(readData(in));
+            if (count > 0) {
+                stack.push(new Frame<E>(child, count));
+            }
+        }
+    }
+
+    /**
+     * <p> Streams the nodes of a tree from the given stream in pre order, without building the tree.
+     * Closing the returned iterator closes the given stream.
+     * </p>
+     * <p> Errors while reading are rethrown as {@link IllegalStateException}s by the iterator.
+     * </p>
+     *
+     * @param stream the stream to read from
+     * @return an iterator over all nodes of the read tree
+     * @throws NullPointerException if stream is null
+     * @throws IOException if the stream contains no valid header
+     */
+    public CloseableIterator<Element<E>> iterator(InputStream stream) throws IOException {
+        Preconditions.checkNotNull(stream, "Stream");
+        readHeader(stream);
+        return new StreamingIterator(stream);
+    }
+
+    private void readHeader(InputStream in) throws IOException {
+        if (readInt(in) != MAGIC) {
+            throw new StreamCorruptedException("stream contains no tree");
+        }
+        final int version = readByte(in);
+        if (version != VERSION) {
+            throw new StreamCorruptedException("unsupported version " + version);
+        }
+    }
+
+    private E readData(InputStream in) throws IOException {
+        final int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        } else {
+            return codec.decode(readBytes(in, length - 1));
+        }
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        // grow the buffer while reading, so a corrupt length can't allocate
+        // much more memory than the stream actually contains
+        byte[] bytes = new byte[Math.min(length, CHUNK_SIZE)];
+        int read = 0;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            final int n = in.read(bytes, read, bytes.length - read);
+            if (n == -1) throw new EOFException("data ends after " + read + " of " + length + " bytes");
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        return (readByte(in) << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = readByte(in);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) break;
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("malformed length");
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        final int b = in.read();
+        if (b == -1) throw new EOFException();
+        return b;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeCodec.of(" + codec + ")";
+    }
+
+    /**
+     * A single node of a tree which is streamed by {@link TreeCodec#iterator(InputStream)}.
+     *
+     * @param <E> the generic type of the data
+     */
+    @Immutable
+    public static final class Element<E> {
+
+        private final E data;
+
+        private final int depth;
+
+        private final int numberOfChildren;
+
+        private Element(E data, int depth, int numberOfChildren) {
+            this.data = data;
+            this.depth = depth;
+            this.numberOfChildren = numberOfChildren;
+        }
+
+        public E getData() {
+            return data;
+        }
+
+        /**
+         * Returns the depth of this node, the root has a depth of 0.
+         *
+         * @return the depth
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the number of children of this node, which directly follow in the stream.
+         *
+         * @return the number of children
+         */
+        public int getNumberOfChildren() {
+            return numberOfChildren;
+        }
+
+        @Override
+        public String toString() {
+            return depth + ":" + data;
+        }
+
+    }
+
+    /**
+     * The number of remaining children of a node while reading.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class Frame<E> {
+
+        private final TreeNode<E> node;
+
+        private int remaining;
+
+        public Frame(TreeNode<E> node, int remaining) {
+            this.node = node;
+            this.remaining = remaining;
+        }
+
+    }
+
+    /**
+     * Streaming implementation of {@link TreeCodec#iterator(InputStream)}.
+     */
+    private final class StreamingIterator extends AbstractIterator<Element<E>>
+        implements CloseableIterator<Element<E>> {
+
+        private final InputStream stream;
+
+        // remaining number of children of all open ancestors, null until the root has been read
+        private LinkedList<int[]> stack;
+
+        public StreamingIterator(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        protected Element<E> computeNext() {
+            if (stack == null) {
+                stack = Lists.newLinkedList();
+            } else {
+                while (!stack.isEmpty() && stack.peek()[0] == 0) {
+                    stack.pop();
+                }
+                if (stack.isEmpty()) {
+                    return endOfData();
+                }
+                stack.peek()[0]--;
+            }
+
+            try {
+                final int children = readVarInt(stream);
+                final Element<E> element = new Element<E>(readData(stream), stack.size(), children);
+                stack.push(new int[] {children});
+                return element;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+    }
+
+    /**
+     * Codec between strings and their UTF-8 representation.
+     */
+    private static final class Utf8Codec extends Codec<String, byte[]> {
+
+        private static final Codec<String, byte[]> INSTANCE = new Utf8Codec();
+
+        @Override
+        public byte[] encode(String input) {
+            return input.getBytes(Charsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] input) {
+            return new String(input, Charsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return "UTF-8";
+        }
+
+    }
+
+}
@@ -0,0 +1,597 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.beans.PropertyVetoException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> The difference between two trees as a script of {@link Edit}s, which transforms
+ * a copy of the source tree into the target tree using {@link #applyTo(TreeNode)}.
+ * </p>
+ * <p> Subtree hashes are computed once per tree, identical subtrees are skipped entirely.
+ * The children of every pair of matched nodes are matched by identical subtrees first, then by data.
+ * Remaining children are paired by position and relabeled, all others are deleted or inserted.
+ * Children which changed their position are moved, the longest sequence of children which kept
+ * their relative order stays in place. Nodes which moved to another parent are expressed as
+ * delete and insert.
+ * </p>
+ * <p> Edits address nodes by paths of child indices, relative to the root and valid
+ * at the time the edit is applied.
+ * </p>
+ *
+ * @param <E> the generic type of the data stored in the nodes
+ */
+@Immutable
+@ThreadSafe
+public final class TreeDiff<E> {
+
+    private final ImmutableList<Edit<E>> edits;
+
+    private TreeDiff(ImmutableList<Edit<E>> edits) {
+        this.edits = edits;
+    }
+
+    /**
+     * Computes the difference between the given trees.
+     *
+     * @param <E> the generic type of the data
+     * @param source the source tree
+     * @param target the target tree
+     * @return the difference which transforms source into target
+     * @throws NullPointerException if source or target is null
+     */
+    public static <E> TreeDiff<E> between(Tree<E> source, Tree<E> target) {
+        Preconditions.checkNotNull(source, "Source");
+        Preconditions.checkNotNull(target, "Target");
+        return between(source.getRoot(), target.getRoot());
+    }
+
+    /**
+     * Computes the difference between the subtrees below the given nodes.
+     * The source and target tree must not be modified during this call.
+     *
+     * @param <E> the generic type of the data
+     * @param source the root of the source subtree
+     * @param target the root of the target subtree
+     * @return the difference which transforms source into target
+     * @throws NullPointerException if source or target is null
+     */
+    public static <E> TreeDiff<E> between(TreeNode<E> source, TreeNode<E> target) {
+        Preconditions.checkNotNull(source, "Source");
+        Preconditions.checkNotNull(target, "Target");
+
+        final ImmutableList.Builder<Edit<E>> edits = ImmutableList.builder();
+        final LinkedList<Pair<E>> pending = Lists.newLinkedList();
+        pending.push(new Pair<E>(Snapshot.of(source), Snapshot.of(target), new int[0]));
+
+        while (!pending.isEmpty()) {
+            final Pair<E> pair = pending.pop();
+            if (pair.source.isEqualTo(pair.target)) continue;
+
+            if (!Objects.equal(pair.source.data, pair.target.data)) {
+                edits.add(new Edit<E>(Operation.RELABEL, pair.path, -1, -1, pair.target.data, null));
+            }
+            diffChildren(pair, edits, pending);
+        }
+
+        return new TreeDiff<E>(edits.build());
+    }
+
+    /**
+     * Transforms the children of the source into the children of the target
+     * and schedules all matched, but different, children.
+     */
+    private static <E> void diffChildren(Pair<E> pair, ImmutableList.Builder<Edit<E>> edits,
+        LinkedList<Pair<E>> pending) {
+
+        final List<Snapshot<E>> sources = pair.source.children;
+        final List<Snapshot<E>> targets = pair.target.children;
+
+        // target index for every source child, -1 if unmatched
+        final int[] matches = new int[sources.size()];
+        Arrays.fill(matches, -1);
+        // source index for every target child, -1 if unmatched
+        final int[] matchedBy = new int[targets.size()];
+        Arrays.fill(matchedBy, -1);
+
+        // 1. identical subtrees
+        final Map<Integer, LinkedList<Integer>> byHash = Maps.newHashMap();
+        for (int i = 0; i < sources.size(); i++) {
+            add(byHash, sources.get(i).hash, i);
+        }
+        for (int j = 0; j < targets.size(); j++) {
+            final LinkedList<Integer> candidates = byHash.get(targets.get(j).hash);
+            if (candidates == null) continue;
+            final Iterator<Integer> iterator = candidates.iterator();
+            while (iterator.hasNext()) {
+                final int i = iterator.next();
+                if (sources.get(i).isEqualTo(targets.get(j))) {
+                    iterator.remove();
+                    matches[i] = j;
+                    matchedBy[j] = i;
+                    break;
+                }
+            }
+        }
+
+        // 2. same data
+        final Map<E, LinkedList<Integer>> byData = Maps.newHashMap();
+        for (int i = 0; i < sources.size(); i++) {
+            if (matches[i] == -1) add(byData, sources.get(i).data, i);
+        }
+        for (int j = 0; j < targets.size(); j++) {
+            if (matchedBy[j] != -1) continue;
+            final LinkedList<Integer> candidates = byData.get(targets.get(j).data);
+            if (candidates == null || candidates.isEmpty()) continue;
+            final int i = candidates.removeFirst();
+            matches[i] = j;
+            matchedBy[j] = i;
+        }
+
+        // 3. remaining children at the same position are relabeled
+        for (int j = 0; j < targets.size() && j < sources.size(); j++) {
+            if (matchedBy[j] == -1 && matches[j] == -1) {
+                matches[j] = j;
+                matchedBy[j] = j;
+            }
+        }
+
+        // delete unmatched children, from the highest index down
+        final List<Integer> current = Lists.newArrayList();
+        for (int i = sources.size() - 1; i >= 0; i--) {
+            if (matches[i] == -1) {
+                edits.add(new Edit<E>(Operation.DELETE, pair.path, i, -1, sources.get(i).data, null));
+            }
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            if (matches[i] != -1) current.add(matches[i]);
+        }
+
+        // children in the longest increasing sequence of target indices stay in place
+        final boolean[] stable = new boolean[targets.size()];
+        for (int j : longestIncreasingSubsequence(current)) {
+            stable[j] = true;
+        }
+
+        // move unstable children which precede a stable one to the end
+        int lastStable = -1;
+        for (int k = 0; k < current.size(); k++) {
+            if (stable[current.get(k)]) lastStable = k;
+        }
+        for (int k = lastStable - 1, end = current.size() - 1; k >= 0; k--) {
+            if (stable[current.get(k)]) continue;
+            edits.add(new Edit<E>(Operation.MOVE, pair.path, k, end, null, null));
+            current.add(current.remove(k));
+        }
+
+        // now the stable children are in order at the front: insert and move into target positions
+        for (int j = 0; j < targets.size(); j++) {
+            if (matchedBy[j] == -1) {
+                final Snapshot<E> target = targets.get(j);
+                edits.add(new Edit<E>(Operation.INSERT, pair.path, j, -1, target.data,
+                    PersistentTree.copyOf(target.node).getRoot()));
+                current.add(j, j);
+            } else if (!stable[j]) {
+                final int position = current.indexOf(j);
+                if (position != j) {
+                    edits.add(new Edit<E>(Operation.MOVE, pair.path, position, j, null, null));
+                    current.add(j, current.remove(position));
+                }
+            }
+        }
+
+        // schedule the matched children
+        for (int j = targets.size() - 1; j >= 0; j--) {
+            if (matchedBy[j] == -1) continue;
+            final Snapshot<E> source = sources.get(matchedBy[j]);
+            if (source.hash == targets.get(j).hash && source.isEqualTo(targets.get(j))) continue;
+            final int[] path = Arrays.copyOf(pair.path, pair.path.length + 1);
+            path[pair.path.length] = j;
+            pending.push(new Pair<E>(source, targets.get(j), path));
+        }
+    }
+
+    private static <K> void add(Map<K, LinkedList<Integer>> map, K key, int value) {
+        LinkedList<Integer> list = map.get(key);
+        if (list == null) {
+            list = Lists.newLinkedList();
+            map.put(key, list);
+        }
+        list.add(value);
+    }
+
+    /**
+     * Computes a longest strictly increasing subsequence in O(n log n).
+     *
+     * @param values the values
+     * @return the values of a longest increasing subsequence
+     */
+    private static List<Integer> longestIncreasingSubsequence(List<Integer> values) {
+        final int size = values.size();
+        // tails[k] = index of the smallest tail of all increasing subsequences of length k + 1
+        final int[] tails = new int[size];
+        final int[] previous = new int[size];
+        int length = 0;
+
+        for (int i = 0; i < size; i++) {
+            final int value = values.get(i);
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (values.get(tails[middle]) < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) length++;
+        }
+
+        final List<Integer> result = Lists.newArrayListWithCapacity(length);
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            result.add(values.get(i));
+        }
+        return Lists.reverse(result);
+    }
+
+    /**
+     * Returns all edits of this diff, in the order they have to be applied.
+     *
+     * @return all edits
+     */
+    public ImmutableList<Edit<E>> getEdits() {
+        return edits;
+    }
+
+    /**
+     * Checks whether the compared trees are equal.
+     *
+     * @return true if there are no edits, false otherwise
+     */
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    /**
+     * Applies all edits of this diff to the given tree.
+     *
+     * @param tree a mutable tree which is equal to the source tree of this diff
+     * @throws NullPointerException if tree is null
+     * @throws IllegalStateException if the tree rejects an edit
+     * @see #applyTo(TreeNode)
+     */
+    public void applyTo(Tree<E> tree) {
+        Preconditions.checkNotNull(tree, "Tree");
+        applyTo(tree.getRoot());
+    }
+
+    /**
+     * <p> Applies all edits of this diff to the subtree below the given node, which
+     * must be equal to the source of this diff. Inserted nodes are created using
+     * {@link TreeNode#addChild(Object)}, so they share the implementation of their parent.
+     * </p>
+     * <p> The edits are meant for node implementations which allow duplicate data on
+     * siblings, like {@link DuplicatesNode}. Other implementations may reject or merge
+     * intermediate states.
+     * </p>
+     *
+     * @param root the root of the subtree to modify
+     * @throws NullPointerException if root is null
+     * @throws IllegalStateException if the tree rejects an edit
+     */
+    public void applyTo(TreeNode<E> root) {
+        Preconditions.checkNotNull(root, "Root");
+        for (Edit<E> edit : edits) {
+            TreeNode<E> node = root;
+            for (int index : edit.path) {
+                node = node.getChildAt(index);
+            }
+            edit.applyTo(node);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TreeDiff " + edits;
+    }
+
+    /**
+     * The operation of an {@link Edit}.
+     */
+    public static enum Operation {
+
+        /**
+         * Inserts a subtree as child of the node at the path.
+         */
+        INSERT,
+
+        /**
+         * Deletes a child of the node at the path.
+         */
+        DELETE,
+
+        /**
+         * Moves a child of the node at the path to another position.
+         */
+        MOVE,
+
+        /**
+         * Changes the data of the node at the path.
+         */
+        RELABEL;
+
+    }
+
+    /**
+     * A single edit of a {@link TreeDiff}.
+     *
+     * @param <E> the generic type of the data
+     */
+    @Immutable
+    public static final class Edit<E> {
+
+        private final Operation operation;
+
+        private final int[] path;
+
+        private final int index;
+
+        private final int targetIndex;
+
+        private final E data;
+
+        private final TreeNode<E> subtree;
+
+        private Edit(Operation operation, int[] path, int index, int targetIndex, E data, TreeNode<E> subtree) {
+            this.operation = operation;
+            this.path = path;
+            this.index = index;
+            this.targetIndex = targetIndex;
+            this.data = data;
+            this.subtree = subtree;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns the path of the affected node as child indices relative to the root.
+         * This is the parent of the inserted, deleted or moved child or the relabeled node itself.
+         *
+         * @return the path
+         */
+        public List<Integer> getPath() {
+            return Ints.asList(path.clone());
+        }
+
+        /**
+         * Returns the index of the inserted or deleted child or the current index of the moved child.
+         *
+         * @return the index, or -1 for relabels
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the new index of a moved child.
+         *
+         * @return the new index, or -1 if this is no move
+         */
+        public int getTargetIndex() {
+            return targetIndex;
+        }
+
+        /**
+         * Returns the new data of a relabeled node, the data of the inserted subtree's root
+         * or the data of the deleted child.
+         *
+         * @return the data, null for moves
+         */
+        public E getData() {
+            return data;
+        }
+
+        /**
+         * Returns the inserted subtree.
+         *
+         * @return an immutable copy of the inserted subtree, or null if this is no insert
+         */
+        public TreeNode<E> getSubtree() {
+            return subtree;
+        }
+
+        private void applyTo(TreeNode<E> node) {
+            switch (operation) {
+                case RELABEL: {
+                    try {
+                        node.setData(data);
+                    } catch (PropertyVetoException e) {
+                        throw new IllegalStateException("relabel rejected: " + this, e);
+                    }
+                    break;
+                }
+                case DELETE: {
+                    node.removeChildAt(index);
+                    break;
+                }
+                case MOVE: {
+                    final TreeNode<E> child = node.getChildAt(index);
+                    node.removeChildAt(index);
+                    node.insertChildAt(targetIndex, child);
+                    break;
+                }
+                case INSERT: {
+                    final TreeNode<E> child = node.addChild(subtree.getData());
+                    final int last = node.getNumberOfChildren() - 1;
+                    if (index != last) {
+                        node.removeChildAt(last);
+                        node.insertChildAt(index, child);
+                    }
+                    copyChildren(subtree, child);
+                    break;
+                }
+                default: {
+                    throw new AssertionError("unknown operation " + operation);
+                }
+            }
+        }
+
+        private static <E> void copyChildren(TreeNode<E> from, TreeNode<E> to) {
+            final LinkedList<TreeNode<E>> sources = Lists.newLinkedList();
+            final LinkedList<TreeNode<E>> targets = Lists.newLinkedList();
+            sources.push(from);
+            targets.push(to);
+            while (!sources.isEmpty()) {
+                final TreeNode<E> source = sources.pop();
+                final TreeNode<E> target = targets.pop();
+                for (TreeNode<E> child : source.getChildren()) {
+                    sources.push(child);
+                    targets.push(target.addChild(child.getData()));
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            switch (operation) {
+                case RELABEL: return "RELABEL " + Arrays.toString(path) + " to " + data;
+                case DELETE: return "DELETE " + Arrays.toString(path) + "[" + index + "] " + data;
+                case MOVE: return "MOVE " + Arrays.toString(path) + "[" + index + " -> " + targetIndex + "]";
+                default: return "INSERT " + Arrays.toString(path) + "[" + index + "] " + subtree;
+            }
+        }
+
+    }
+
+    /**
+     * A pair of matched nodes and the path of the source node in the (partially transformed) tree.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class Pair<E> {
+
+        private final Snapshot<E> source;
+
+        private final Snapshot<E> target;
+
+        private final int[] path;
+
+        public Pair(Snapshot<E> source, Snapshot<E> target, int[] path) {
+            this.source = source;
+            this.target = target;
+            this.path = path;
+        }
+
+    }
+
+    /**
+     * A copy of a tree which caches the hash of every subtree.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class Snapshot<E> {
+
+        private final TreeNode<E> node;
+
+        private final E data;
+
+        private final List<Snapshot<E>> children;
+
+        private int hash;
+
+        private Snapshot(TreeNode<E> node) {
+            this.node = node;
+            this.data = node.getData();
+            this.children = Lists.newArrayListWithCapacity(node.getNumberOfChildren());
+        }
+
+        public static <E> Snapshot<E> of(TreeNode<E> root) {
+            final Snapshot<E> snapshot = new Snapshot<E>(root);
+            final LinkedList<Snapshot<E>> stack = Lists.newLinkedList();
+            final LinkedList<Iterator<TreeNode<E>>> iterators = Lists.newLinkedList();
+            stack.push(snapshot);
+            iterators.push(root.getChildren().iterator());
+
+            while (!stack.isEmpty()) {
+                final Iterator<TreeNode<E>> iterator = iterators.peek();
+                if (iterator.hasNext()) {
+                    final TreeNode<E> child = iterator.next();
+                    final Snapshot<E> childSnapshot = new Snapshot<E>(child);
+                    stack.peek().children.add(childSnapshot);
+                    stack.push(childSnapshot);
+                    iterators.push(child.getChildren().iterator());
+                } else {
+                    iterators.pop();
+                    stack.pop().computeHash();
+                }
+            }
+            return snapshot;
+        }
+
+        private void computeHash() {
+            int result = 31 + (data == null ? 0 : data.hashCode());
+            for (Snapshot<E> child : children) {
+                result = 31 * result + child.hash;
+            }
+            this.hash = 31 * result + children.size();
+        }
+
+        /**
+         * Compares the subtrees below this and other iteratively.
+         *
+         * @param other the other snapshot
+         * @return true if both subtrees are equal
+         */
+        public boolean isEqualTo(Snapshot<E> other) {
+            if (hash != other.hash) return false;
+            final LinkedList<Snapshot<E>> left = Lists.newLinkedList();
+            final LinkedList<Snapshot<E>> right = Lists.newLinkedList();
+            left.push(this);
+            right.push(other);
+            while (!left.isEmpty()) {
+                final Snapshot<E> a = left.pop();
+                final Snapshot<E> b = right.pop();
+                if (a == b) continue;
+                if (a.hash != b.hash || a.children.size() != b.children.size()) return false;
+                if (!Objects.equal(a.data, b.data)) return false;
+                left.addAll(a.children);
+                right.addAll(b.children);
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Static utility class for {@link Tree}s and {@link TreeNode}s.
+ */
+public final class Trees {
+
+    private Trees() {
+
+    }
+
+    /**
+     * <p> Folds the subtree below the given node into a single value.
+     * Every node without children is mapped using the leafFunction,
+     * every other node is mapped using the combiner, which receives the results
+     * of all children. Counting nodes, summing up values or computing the depth
+     * are typical folds.
+     * </p>
+     * <p> The tree is walked iteratively, so deep trees can't overflow the stack.
+     * </p>
+     *
+     * @param <E> the generic type of the data
+     * @param <R> the generic type of the result
+     * @param root the root of the subtree to fold, does not need to be the root of a tree
+     * @param leafFunction the function which is applied to nodes without children
+     * @param combiner the combiner which is applied to nodes with children
+     * @return the result of the root node
+     * @throws NullPointerException if root, leafFunction or combiner is null
+     */
+    public static <E, R> R fold(TreeNode<E> root, Function<? super E, ? extends R> leafFunction,
+        Combiner<? super E, R> combiner) {
+        Preconditions.checkNotNull(root, "Root");
+        Preconditions.checkNotNull(leafFunction, "LeafFunction");
+        Preconditions.checkNotNull(combiner, "Combiner");
+
+        final LinkedList<FoldFrame<E, R>> stack = Lists.newLinkedList();
+        stack.push(new FoldFrame<E, R>(root));
+
+        while (true) {
+            final FoldFrame<E, R> frame = stack.peek();
+            if (frame.children.hasNext()) {
+                stack.push(new FoldFrame<E, R>(frame.children.next()));
+                continue;
+            }
+
+            stack.pop();
+            final E data = frame.node.getData();
+            final R result;
+            if (frame.results == null) {
+                result = leafFunction.apply(data);
+            } else {
+                result = combiner.combine(data, frame.results);
+            }
+
+            if (stack.isEmpty()) {
+                return result;
+            } else {
+                stack.peek().add(result);
+            }
+        }
+    }
+
+    /**
+     * <p> Folds the subtree below the given node into a single value, like
+     * {@link #fold(TreeNode, Function, Combiner)}, but folds independent
+     * subtrees in parallel using the given executor.
+     * </p>
+     * <p> The tree is split at subtree boundaries, as by {@link #split(TreeNode, int)},
+     * into about four parts per available processor. Every part is folded in its own task,
+     * the nodes above those parts are combined in the calling thread afterwards.
+     * Tasks never wait for other tasks, so any executor, including a small fixed
+     * thread pool, can be used. The leafFunction and the combiner must be thread-safe.
+     * </p>
+     *
+     * @param <E> the generic type of the data
+     * @param <R> the generic type of the result
+     * @param root the root of the subtree to fold, does not need to be the root of a tree
+     * @param leafFunction the function which is applied to nodes without children
+     * @param combiner the combiner which is applied to nodes with children
+     * @param executor the executor which runs the parallel tasks
+     * @return the result of the root node
+     * @throws NullPointerException if root, leafFunction, combiner or executor is null
+     * @throws com.google.common.util.concurrent.UncheckedExecutionException if a task failed
+     */
+    public static <E, R> R fold(TreeNode<E> root, final Function<? super E, ? extends R> leafFunction,
+        final Combiner<? super E, R> combiner, ExecutorService executor) {
+        Preconditions.checkNotNull(root, "Root");
+        Preconditions.checkNotNull(leafFunction, "LeafFunction");
+        Preconditions.checkNotNull(combiner, "Combiner");
+        Preconditions.checkNotNull(executor, "Executor");
+
+        final int parts = 4 * Runtime.getRuntime().availableProcessors();
+        final List<Segment<E, R>> segments = segments(root, parts);
+        if (segments.size() == 1) {
+            return fold(root, leafFunction, combiner);
+        }
+
+        boolean completed = false;
+        try {
+            for (final Segment<E, R> segment : segments) {
+                if (segment.children != null) continue;
+                segment.future = executor.submit(new Callable<R>() {
+
+                    @Override
+                    public R call() {
+                        return fold(segment.node, leafFunction, combiner);
+                    }
+
+                });
+            }
+
+            // segments are in level order, so children are always combined before their parents
+            for (final Segment<E, R> segment : Lists.reverse(segments)) {
+                if (segment.children == null) continue;
+                final List<R> results = Lists.newArrayListWithCapacity(segment.children.size());
+                for (Segment<E, R> child : segment.children) {
+                    results.add(child.result());
+                }
+                segment.result = combiner.combine(segment.node.getData(), results);
+            }
+
+            final R result = segments.get(0).result;
+            completed = true;
+            return result;
+        } finally {
+            if (!completed) {
+                for (Segment<E, R> segment : segments) {
+                    if (segment.future != null) segment.future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p> Splits the subtree below the given node at subtree boundaries into
+     * disjoint parts which can be processed independently, e.g. in parallel.
+     * Every node of the subtree is returned by exactly one of the parts.
+     * </p>
+     * <p> The subtree is expanded in level order until there are at least the requested number
+     * of independent subtrees or no more nodes with children are left. If any node
+     * had to be expanded, the first part returns the data of all expanded nodes in level order.
+     * Every following part returns one independent subtree in pre order.
+     * </p>
+     * <p> The parts are views, which walk the current state of the subtree lazily.
+     * </p>
+     *
+     * @param <E> the generic type of the data
+     * @param root the root of the subtree to split, does not need to be the root of a tree
+     * @param parts the desired number of independent subtrees
+     * @return a list of disjoint parts of the given subtree
+     * @throws NullPointerException if root is null
+     * @throws IllegalArgumentException if parts is less than 1
+     */
+    public static <E> List<Iterable<E>> split(TreeNode<E> root, int parts) {
+        Preconditions.checkNotNull(root, "Root");
+        Preconditions.checkArgument(parts > 0, "Parts must be positive, but was %s", parts);
+
+        final List<Segment<E, Void>> segments = segments(root, parts);
+        final List<E> expanded = Lists.newArrayList();
+        final ImmutableList.Builder<Iterable<E>> builder = ImmutableList.builder();
+
+        for (final Segment<E, Void> segment : segments) {
+            if (segment.children == null) {
+                builder.add(new Iterable<E>() {
+
+                    @Override
+                    public Iterator<E> iterator() {
+                        return new SubtreeIterator<E>(segment.node);
+                    }
+
+                    @Override
+                    public String toString() {
+                        return Iterables.toString(this);
+                    }
+
+                });
+            } else {
+                expanded.add(segment.node.getData());
+            }
+        }
+
+        if (expanded.isEmpty()) {
+            return builder.build();
+        } else {
+            return ImmutableList.<Iterable<E>>builder().
+                add(ImmutableList.copyOf(expanded)).addAll(builder.build()).build();
+        }
+    }
+
+    /**
+     * Expands the given subtree in level order until at least the given number
+     * of unexpanded segments exist or nothing can be expanded anymore.
+     *
+     * @param <E> the generic type of the data
+     * @param <R> the generic type of the result
+     * @param root the root of the subtree
+     * @param parts the desired number of unexpanded segments
+     * @return all segments in level order, starting with the root
+     */
+    private static <E, R> List<Segment<E, R>> segments(TreeNode<E> root, int parts) {
+        final List<Segment<E, R>> segments = Lists.newArrayList();
+        segments.add(new Segment<E, R>(root));
+        int unexpanded = 1;
+
+        for (int i = 0; i < segments.size() && unexpanded < parts; i++) {
+            final Segment<E, R> segment = segments.get(i);
+            if (segment.node.getNumberOfChildren() == 0) continue;
+
+            segment.children = Lists.newArrayListWithCapacity(segment.node.getNumberOfChildren());
+            unexpanded--;
+            for (TreeNode<E> child : segment.node.getChildren()) {
+                final Segment<E, R> childSegment = new Segment<E, R>(child);
+                segment.children.add(childSegment);
+                segments.add(childSegment);
+                unexpanded++;
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * The state of a single node during {@link Trees#fold(TreeNode, Function, Combiner)}.
+     *
+     * @param <E> the generic type of the data
+     * @param <R> the generic type of the result
+     */
+    private static final class FoldFrame<E, R> {
+
+        private final TreeNode<E> node;
+
+        private final Iterator<TreeNode<E>> children;
+
+        private List<R> results;
+
+        public FoldFrame(TreeNode<E> node) {
+            this.node = node;
+            this.children = node.getChildren().iterator();
+        }
+
+        public void add(R result) {
+            if (results == null) {
+                results = Lists.newArrayListWithCapacity(node.getNumberOfChildren());
+            }
+            results.add(result);
+        }
+
+    }
+
+    /**
+     * A node which is either expanded (children != null) or the root
+     * of an independent subtree.
+     *
+     * @param <E> the generic type of the data
+     * @param <R> the generic type of the result
+     */
+    private static final class Segment<E, R> {
+
+        private final TreeNode<E> node;
+
+        private List<Segment<E, R>> children;
+
+        private Future<R> future;
+
+        private R result;
+
+        public Segment(TreeNode<E> node) {
+            this.node = node;
+        }
+
+        public R result() {
+            return future == null ? result : Futures.getUnchecked(future);
+        }
+
+    }
+
+    /**
+     * Iterates over the data of a subtree in pre order. In contrast to
+     * {@link de.cosmocode.collections.tree.iterator.PreOrderIterator} the given node
+     * does not need to be a root node.
+     *
+     * @param <E> the generic type of the data
+     */
+    private static final class SubtreeIterator<E> extends AbstractIterator<E> {
+
+        private final LinkedList<Iterator<TreeNode<E>>> stack = Lists.newLinkedList();
+
+        private TreeNode<E> root;
+
+        public SubtreeIterator(TreeNode<E> root) {
+            this.root = root;
+        }
+
+        @Override
+        protected E computeNext() {
+            if (root != null) {
+                final TreeNode<E> node = root;
+                root = null;
+                stack.push(node.getChildren().iterator());
+                return node.getData();
+            }
+
+            while (!stack.isEmpty()) {
+                final Iterator<TreeNode<E>> iterator = stack.peek();
+                if (iterator.hasNext()) {
+                    final TreeNode<E> node = iterator.next();
+                    stack.push(node.getChildren().iterator());
+                    return node.getData();
+                } else {
+                    stack.pop();
+                }
+            }
+
+            return endOfData();
+        }
+
+    }
+
+}
@@ -23,9 +23,6 @@ import java.beans.VetoableChangeListener;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 
 /**
@@ -54,7 +51,7 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
     private static final long serialVersionUID = 3205686938101651970L;
      
     private E data;
-    private Map<E, TreeNode<E>> children;
+    private IndexedChildren<E> children;
     private TreeNode<E> parent;
  
     /**
@@ -112,14 +109,14 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
      */
     protected void initChildren() {
         if (children == null) {
-            children = new LinkedHashMap<E, TreeNode<E>>();
+            children = new IndexedChildren<E>();
         }
     }
     
     @Override
     protected void setThisAsParentOf(TreeNode<E> child) {
         super.setThisAsParentOf(child);
-        child.addVetoableChangeListener(this);
+        observe(child, this);
     }
     
     
@@ -138,7 +135,7 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
         if (children == null) {
             return Collections.emptyList();
         } else {
-            return Collections.unmodifiableCollection(children.values());
+            return children.values();
         }
     }
 
@@ -158,6 +155,16 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
     public int getNumberOfChildren() {
         return children == null ? 0 : children.size();
     }
+
+    @Override
+    public TreeNode<E> getChildAt(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= getNumberOfChildren()) {
+            // produces the appropriate exception
+            return super.getChildAt(index);
+        } else {
+            return children.getAt(index);
+        }
+    }
     
     @Override
     protected void addChildNodeInternal(TreeNode<E> child) {
@@ -193,7 +200,7 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
         } else {
             final UniqueNode<E> newNode = new UniqueNode<E>(this, childData);
             children.put(childData, newNode);
-            newNode.addVetoableChangeListener(this);
+            observe(newNode, this);
             return newNode;
         }
     }
@@ -221,26 +228,7 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
             checkChildNode(child);
             setThisAsParentOf(child);
             
-            // go to index
-            int counter = index;
-            final Iterator<Map.Entry<E, TreeNode<E>>> iter = children.entrySet().iterator();
-            while (counter > 0 && iter.hasNext()) {
-                iter.next();
-                --counter;
-            }
-            
-            // create new map, put new element and all old elements into temporary map
-            final int numElements = children.size() - index + 1;
-            final Map<E, TreeNode<E>> nextElements = new LinkedHashMap<E, TreeNode<E>>(2 * numElements);
-            nextElements.put(child.getData(), child);
-            while (iter.hasNext()) {
-                final Map.Entry<E, TreeNode<E>> elem = iter.next();
-                nextElements.put(elem.getKey(), elem.getValue());
-                iter.remove();
-            }
-            
-            // put all elements of temporary map back into children map
-            children.putAll(nextElements);
+            children.insert(index, child.getData(), child);
         }
     }
     
@@ -252,7 +240,7 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
         final TreeNode<E> myChild = children.remove(child.getData());
         if (myChild != null && myChild == child) {
             myChild.setParent(null);
-            myChild.removeVetoableChangeListener(this);
+            unobserve(myChild, this);
         }
     }
      
@@ -262,7 +250,7 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
         if (child != null) {
             children.remove(child.getData());
             child.setParent(null);
-            child.removeVetoableChangeListener(this);
+            unobserve(child, this);
         }
     }
     
@@ -270,15 +258,13 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
     public void removeAllChildren() {
         if (children == null) return;
         
-        final Iterator<Map.Entry<E, TreeNode<E>>> entries = this.children.entrySet().iterator();
-        while (entries.hasNext()) {
-            final Map.Entry<E, TreeNode<E>> entry = entries.next();
-            if (entry.getValue() != null) {
-                entry.getValue().setParent(null);
-                entry.getValue().removeVetoableChangeListener(this);
+        for (final TreeNode<E> child : children.values()) {
+            if (child != null) {
+                child.setParent(null);
+                unobserve(child, this);
             }
-            entries.remove();
         }
+        children.clear();
     }
 
     @Override
@@ -292,23 +278,35 @@ public class UniqueNode<E> extends AbstractTreeNode<E> implements Serializable,
     }
     
 
+    @Override
+    void checkRekey(final TreeNode<E> child, final E oldData, final E newData) throws PropertyVetoException {
+        if (children == null || !children.containsKey(oldData)) return;
+        
+        if (children.containsKey(newData)) {
+            throw new PropertyVetoException(ERR_ADD_DUPLICATE,
+                new PropertyChangeEvent(child, DATA_PROPERTY, oldData, newData));
+        }
+    }
+
+    @Override
+    void rekeyChild(final TreeNode<E> child, final E oldData, final E newData) throws PropertyVetoException {
+        checkRekey(child, oldData, newData);
+        if (children == null || !children.containsKey(oldData)) return;
+        children.remove(oldData);
+        children.put(newData, child);
+    }
+
     @Override
     public void vetoableChange(PropertyChangeEvent evt) throws PropertyVetoException {
-        if (DATA_PROPERTY.equals(evt.getPropertyName())
-            && children.containsKey(evt.getOldValue())) {
-            
-            // this is one of our children
+        if (DATA_PROPERTY.equals(evt.getPropertyName())) {
+            // one of our children, which is no AbstractTreeNode, see observe(TreeNode, VetoableChangeListener)
             @SuppressWarnings("unchecked")
             final TreeNode<E> child = (TreeNode<E>) evt.getSource();
             @SuppressWarnings("unchecked")
+            final E oldData = (E) evt.getOldValue();
+            @SuppressWarnings("unchecked")
             final E newData = (E) evt.getNewValue();
-            
-            if (children.containsKey(newData)) {
-                throw new PropertyVetoException(ERR_ADD_DUPLICATE, evt);
-            } else {
-                children.remove(evt.getOldValue());
-                children.put(newData, child);
-            }
+            rekeyChild(child, oldData, newData);
         }
     }
 
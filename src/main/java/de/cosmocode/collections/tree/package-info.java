@@ -37,6 +37,11 @@
  * <ul>
  *   <li> ImmutableTree implements Tree </li>
  *   <li> ImmutableNode implements TreeNode </li>
+ *   <li> PersistentTree implements Tree, whose versions share unchanged subtrees </li>
+ *   <li> CopyOnWriteTree implements Tree, a thread-safe tree which publishes PersistentTree snapshots </li>
  * </ul>
+ * <p>
+ * Trees provides folds and splits of subtrees, which can be processed in parallel.
+ * </p>
  */
 package de.cosmocode.collections.tree;
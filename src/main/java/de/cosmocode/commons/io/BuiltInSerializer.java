@@ -0,0 +1,433 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.io;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.cosmocode.collections.tree.TreeCodec;
+import de.cosmocode.collections.tree.TreeNode;
+import de.cosmocode.collections.utility.Utility;
+import de.cosmocode.collections.utility.UtilityMap;
+import de.cosmocode.commons.Codec;
+import de.cosmocode.commons.reflect.Reflection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The serializers which are registered in every {@link Serializers} instance.
+ * The order of the constants defines the order in which super types are matched,
+ * the tags must never change.
+ *
+ * @since 1.21
+ */
+enum BuiltInSerializer implements Serializer<Object> {
+
+    JDK(1, Serializable.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            if (!(value instanceof Serializable)) {
+                throw new NotSerializableException(value.getClass().getName());
+            }
+            final byte[] bytes = Serialization.save((Serializable) value);
+            Serializers.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            final byte[] bytes = new byte[Serializers.readVarInt(in)];
+            in.readFully(bytes);
+            return Serialization.restore(Serializable.class, bytes);
+        }
+
+    },
+
+    BOOLEAN(2, Boolean.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeBoolean((Boolean) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return in.readBoolean();
+        }
+
+    },
+
+    BYTE(3, Byte.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeByte((Byte) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return in.readByte();
+        }
+
+    },
+
+    SHORT(4, Short.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeShort((Short) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return in.readShort();
+        }
+
+    },
+
+    CHARACTER(5, Character.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeChar((Character) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return in.readChar();
+        }
+
+    },
+
+    INTEGER(6, Integer.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            Serializers.writeSignedVarLong(out, (Integer) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return (int) Serializers.readSignedVarLong(in);
+        }
+
+    },
+
+    LONG(7, Long.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            Serializers.writeSignedVarLong(out, (Long) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return Serializers.readSignedVarLong(in);
+        }
+
+    },
+
+    FLOAT(8, Float.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeFloat((Float) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return in.readFloat();
+        }
+
+    },
+
+    DOUBLE(9, Double.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeDouble((Double) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return in.readDouble();
+        }
+
+    },
+
+    STRING(10, String.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            Serializers.writeString(out, (String) value);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return Serializers.readString(in);
+        }
+
+    },
+
+    DATE(11, Date.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            out.writeLong(((Date) value).getTime());
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            return new Date(in.readLong());
+        }
+
+    },
+
+    BYTES(12, byte[].class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            final byte[] bytes = (byte[]) value;
+            Serializers.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException {
+            final byte[] bytes = new byte[Serializers.readVarInt(in)];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+    },
+
+    ENUM(13, Enum.class) {
+
+        // constants are written by name, like JDK serialization does, so reordering them is safe
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            final Enum<?> constant = (Enum<?>) value;
+            Serializers.writeString(out, constant.getDeclaringClass().getName());
+            Serializers.writeString(out, constant.name());
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            final String className = Serializers.readString(in);
+            // application enums are usually not visible to the class loader of this library
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            final Class<?> type = loader == null ?
+                Reflection.forName(className) : Reflection.forName(className, loader);
+            final String name = Serializers.readString(in);
+            final Object[] constants = type.getEnumConstants();
+            if (constants != null) {
+                for (Object constant : constants) {
+                    if (((Enum<?>) constant).name().equals(name)) return constant;
+                }
+            }
+            throw new InvalidClassException(type.getName(), "no enum constant " + name);
+        }
+
+    },
+
+    UTILITY_MAP(14, UtilityMap.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            MAP.write(value, out, serializers);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            return Utility.asUtilityMap((Map<?, ?>) MAP.read(in, serializers));
+        }
+
+    },
+
+    TREE_NODE(15, TreeNode.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            @SuppressWarnings("unchecked")
+            final TreeNode<Object> root = (TreeNode<Object>) value;
+            try {
+                new TreeCodec<Object>(new DataCodec(serializers)).write(root, out);
+            } catch (IllegalArgumentException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                throw e;
+            }
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            try {
+                return new TreeCodec<Object>(new DataCodec(serializers)).read(in);
+            } catch (IllegalArgumentException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                Throwables.propagateIfInstanceOf(e.getCause(), ClassNotFoundException.class);
+                throw e;
+            }
+        }
+
+    },
+
+    LIST(16, List.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            writeElements((Collection<?>) value, out, serializers);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            final int size = Serializers.readVarInt(in);
+            final List<Object> list = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                list.add(serializers.readObject(in));
+            }
+            return list;
+        }
+
+    },
+
+    SET(17, Set.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            writeElements((Collection<?>) value, out, serializers);
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            final int size = Serializers.readVarInt(in);
+            final Set<Object> set = Sets.newLinkedHashSetWithExpectedSize(size);
+            for (int i = 0; i < size; i++) {
+                set.add(serializers.readObject(in));
+            }
+            return set;
+        }
+
+    },
+
+    MAP(18, Map.class) {
+
+        @Override
+        public void write(Object value, DataOutputStream out, Serializers serializers) throws IOException {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            Serializers.writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                serializers.writeObject(entry.getKey(), out);
+                serializers.writeObject(entry.getValue(), out);
+            }
+        }
+
+        @Override
+        public Object read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException {
+            final int size = Serializers.readVarInt(in);
+            final Map<Object, Object> map = Maps.newLinkedHashMap();
+            for (int i = 0; i < size; i++) {
+                final Object key = serializers.readObject(in);
+                map.put(key, serializers.readObject(in));
+            }
+            return map;
+        }
+
+    };
+
+    private final int tag;
+
+    private final Class<?> type;
+
+    private BuiltInSerializer(int tag, Class<?> type) {
+        this.tag = tag;
+        this.type = type;
+    }
+
+    public int getTag() {
+        return tag;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Returns whether this serializer is used for sub types of its type, too.
+     */
+    public boolean isHierarchical() {
+        return this == ENUM || this == UTILITY_MAP || this == TREE_NODE || this == LIST || this == SET || this == MAP;
+    }
+
+    private static void writeElements(Collection<?> collection, DataOutputStream out,
+        Serializers serializers) throws IOException {
+        Serializers.writeVarInt(out, collection.size());
+        for (Object element : collection) {
+            serializers.writeObject(element, out);
+        }
+    }
+
+    /**
+     * Encodes the data of tree nodes using a {@link Serializers} registry. Exceptions are
+     * wrapped into {@link IllegalArgumentException}s, as required by {@link Codec}.
+     */
+    private static final class DataCodec extends Codec<Object, byte[]> {
+
+        private final Serializers serializers;
+
+        public DataCodec(Serializers serializers) {
+            this.serializers = serializers;
+        }
+
+        @Override
+        public byte[] encode(Object input) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                serializers.writeObject(input, new DataOutputStream(bytes));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Object decode(byte[] input) {
+            try {
+                return serializers.readObject(new DataInputStream(new ByteArrayInputStream(input)));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+    }
+
+}
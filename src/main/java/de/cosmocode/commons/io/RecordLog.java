@@ -0,0 +1,509 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records, stored in a single file. Records are encoded using
+ * {@link Serializers} and read lazily, so logs can be much larger than the available memory.
+ *
+ * <p>
+ *   The file starts with a short header. Every record is stored as the length of its payload,
+ *   the CRC-32 checksum of its payload and the CRC-32 checksum of these two values, all as
+ *   four byte integers, followed by the payload. The checksum of the header detects corrupt
+ *   lengths before they are used. {@link Writer#append(Object)} returns the offset of every record,
+ *   which can be passed to {@link #iterator(long)} to start reading at that record.
+ * </p>
+ * <p>
+ *   A last record which has been cut off at the end of the file, e.g. by a crash while appending,
+ *   ends the iteration. Corrupt records cause an {@link IllegalStateException}. After a crash,
+ *   {@link #recover()} should be called before appending again, which removes incomplete and
+ *   garbage records at the end of the file.
+ * </p>
+ *
+ * @since 1.21
+ * @param <T> the generic type of the records
+ */
+@Immutable
+@ThreadSafe
+public final class RecordLog<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordLog.class);
+
+    private static final int MAGIC = 0x4343524C;
+
+    private static final int VERSION = 1;
+
+    // magic and version
+    private static final int HEADER = 4 + 1;
+
+    // length, checksum of the payload and checksum of both
+    private static final int RECORD_HEADER = 4 + 4 + 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private final Class<T> type;
+
+    private final Serializers serializers;
+
+    /**
+     * Creates a log which is stored in the given file, which will be created
+     * when the first writer is opened.
+     *
+     * @param file the file of the log
+     * @param type the class literal of T used for typesafe casting
+     * @param serializers the serializers used to encode the records
+     * @throws NullPointerException if file, type or serializers is null
+     */
+    public RecordLog(File file, Class<T> type, Serializers serializers) {
+        this.file = Preconditions.checkNotNull(file, "File");
+        this.type = Preconditions.checkNotNull(type, "Type");
+        this.serializers = Preconditions.checkNotNull(serializers, "Serializers");
+    }
+
+    /**
+     * Opens a writer which appends records to the end of this log.
+     *
+     * @param sync the policy when written records are forced to the storage device
+     * @return a new writer
+     * @throws NullPointerException if sync is null
+     * @throws IOException if opening the file failed or the file contains no record log
+     */
+    public Writer<T> openWriter(Sync sync) throws IOException {
+        Preconditions.checkNotNull(sync, "Sync");
+        if (file.length() > 0) {
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                readHeader(in);
+            } finally {
+                in.close();
+            }
+        }
+        return new Writer<T>(this, sync);
+    }
+
+    /**
+     * Returns an iterator over all records of this log.
+     *
+     * @return a new iterator which has to be closed
+     * @throws IOException if opening the file failed or the file contains no record log
+     */
+    public CloseableIterator<T> iterator() throws IOException {
+        return iterator(HEADER);
+    }
+
+    /**
+     * Returns an iterator over all records of this log, starting at the record
+     * with the given offset as returned by {@link Writer#append(Object)}.
+     *
+     * @param offset the offset of the first record to read
+     * @return a new iterator which has to be closed
+     * @throws IllegalArgumentException if offset is lower than the offset of the first record
+     * @throws IOException if opening the file failed or the file contains no record log
+     */
+    public CloseableIterator<T> iterator(long offset) throws IOException {
+        return open(offset);
+    }
+
+    private RecordIterator open(long offset) throws IOException {
+        Preconditions.checkArgument(offset >= HEADER, "Offset must be at least %s, but was %s", HEADER, offset);
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            readHeader(new DataInputStream(stream));
+            stream.getChannel().position(offset);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        return new RecordIterator(stream, offset);
+    }
+
+    /**
+     * Removes incomplete, corrupt or garbage records at the end of this log, which may be left by a crash.
+     * A corrupt record is only removed if no valid record follows it. This reads the whole log
+     * and must not be called while a writer is open.
+     *
+     * @return the new length of the log file
+     * @throws IOException if reading or truncating failed or the log contains
+     *         a corrupt record which is followed by valid records
+     */
+    public long recover() throws IOException {
+        if (!file.exists()) return 0;
+        final RecordIterator iterator = open(HEADER);
+        long valid;
+        try {
+            while (iterator.readRecord()) {
+                continue;
+            }
+            valid = iterator.offset;
+        } catch (StreamCorruptedException e) {
+            valid = iterator.offset;
+            if (containsRecord(valid + 1)) {
+                throw new StreamCorruptedException("corrupt record at offset " + valid + " in " + file);
+            }
+        } finally {
+            iterator.close();
+        }
+
+        if (valid < file.length()) {
+            LOG.warn("Truncating {} from {} to {} bytes", new Object[] {file, file.length(), valid});
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(valid);
+            } finally {
+                raf.close();
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Searches for a valid record header at any position starting at the given one.
+     * Headers are valid by chance with a probability of 2^-32 per position, so the
+     * payload of a found record has to be valid, too.
+     */
+    private boolean containsRecord(long start) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long length = raf.length();
+            final byte[] window = new byte[BUFFER_SIZE];
+            final CRC32 checksum = new CRC32();
+            long position = start;
+            while (position + RECORD_HEADER <= length) {
+                raf.seek(position);
+                final int read = (int) Math.min(window.length, length - position);
+                raf.readFully(window, 0, read);
+                for (int i = 0; i + RECORD_HEADER <= read; i++) {
+                    final int size = readInt(window, i);
+                    final int expected = readInt(window, i + 4);
+                    if (size <= 0 || headerChecksum(checksum, size, expected) != readInt(window, i + 8)) continue;
+                    final long payload = position + i + RECORD_HEADER;
+                    if (size > length - payload) continue;
+                    final byte[] bytes = new byte[size];
+                    raf.seek(payload);
+                    raf.readFully(bytes);
+                    checksum.reset();
+                    checksum.update(bytes);
+                    if ((int) checksum.getValue() == expected) return true;
+                }
+                // headers may span two windows
+                position += read - RECORD_HEADER + 1;
+            }
+            return false;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return (bytes[index] << 24) | ((bytes[index + 1] & 0xFF) << 16) |
+            ((bytes[index + 2] & 0xFF) << 8) | (bytes[index + 3] & 0xFF);
+    }
+
+    private static int headerChecksum(CRC32 checksum, int length, int payloadChecksum) {
+        checksum.reset();
+        update(checksum, length);
+        update(checksum, payloadChecksum);
+        return (int) checksum.getValue();
+    }
+
+    private static void update(CRC32 checksum, int value) {
+        checksum.update(value >>> 24);
+        checksum.update(value >>> 16);
+        checksum.update(value >>> 8);
+        checksum.update(value);
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new StreamCorruptedException("stream contains no record log");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordLog [file=" + file + "]";
+    }
+
+    /**
+     * Policies when appended records are forced to the storage device.
+     */
+    public static enum Sync {
+
+        /**
+         * Records are written to the operating system when the writer is flushed or closed,
+         * but never forced to the storage device.
+         */
+        NONE,
+
+        /**
+         * Records are forced to the storage device when the writer is flushed or closed.
+         */
+        ON_FLUSH,
+
+        /**
+         * Every record is forced to the storage device before {@link Writer#append(Object)} returns.
+         */
+        ALWAYS;
+
+    }
+
+    /**
+     * Appends records to a {@link RecordLog}. Obtained using {@link RecordLog#openWriter(Sync)}.
+     *
+     * @param <T> the generic type of the records
+     */
+    @ThreadSafe
+    public static final class Writer<T> implements Closeable, Flushable {
+
+        private final RecordLog<T> log;
+
+        private final Sync sync;
+
+        private final FileOutputStream file;
+
+        @GuardedBy("this")
+        private final DataOutputStream out;
+
+        @GuardedBy("this")
+        private final Buffer buffer = new Buffer();
+
+        @GuardedBy("this")
+        private final CRC32 checksum = new CRC32();
+
+        @GuardedBy("this")
+        private long offset;
+
+        private Writer(RecordLog<T> log, Sync sync) throws IOException {
+            this.log = log;
+            this.sync = sync;
+            this.file = new FileOutputStream(log.file, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+            this.offset = file.getChannel().size();
+            if (offset == 0) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                offset = HEADER;
+            }
+        }
+
+        /**
+         * Appends the given record to the log.
+         *
+         * @param record the record to append, may be null
+         * @return the offset of the appended record
+         * @throws IOException if encoding or writing the record failed
+         */
+        public synchronized long append(T record) throws IOException {
+            buffer.reset();
+            log.serializers.writeObject(record, new DataOutputStream(buffer));
+            // empty records can't be told apart from zero-filled garbage
+            Preconditions.checkState(buffer.size() > 0, "Serializers wrote no data for %s", record);
+            checksum.reset();
+            checksum.update(buffer.array(), 0, buffer.size());
+            final int payloadChecksum = (int) checksum.getValue();
+
+            final long recordOffset = offset;
+            out.writeInt(buffer.size());
+            out.writeInt(payloadChecksum);
+            out.writeInt(headerChecksum(checksum, buffer.size(), payloadChecksum));
+            out.write(buffer.array(), 0, buffer.size());
+            offset += RECORD_HEADER + buffer.size();
+
+            if (sync == Sync.ALWAYS) {
+                out.flush();
+                file.getChannel().force(false);
+            }
+            return recordOffset;
+        }
+
+        /**
+         * Returns the offset the next record will be written at, which is the length
+         * of the log after all appended records have been flushed.
+         *
+         * @return the offset of the next record
+         */
+        public synchronized long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Writes all buffered records to the operating system and forces them
+         * to the storage device unless the sync policy is {@link Sync#NONE}.
+         *
+         * @throws IOException if writing failed
+         */
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+            if (sync != Sync.NONE) {
+                file.getChannel().force(false);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "RecordLog.Writer [log=" + log + ", sync=" + sync + "]";
+        }
+
+    }
+
+    /**
+     * Lazily decoding implementation of {@link RecordLog#iterator(long)}.
+     */
+    private final class RecordIterator extends AbstractIterator<T> implements CloseableIterator<T> {
+
+        private final FileChannel channel;
+
+        private final DataInputStream in;
+
+        private final CRC32 checksum = new CRC32();
+
+        // offset of the next record
+        private long offset;
+
+        // the known length of the file, which only grows while appending
+        private long limit;
+
+        private byte[] payload = new byte[0];
+
+        private int length;
+
+        public RecordIterator(FileInputStream stream, long offset) throws IOException {
+            this.channel = stream.getChannel();
+            this.in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+            this.offset = offset;
+            this.limit = channel.size();
+        }
+
+        @Override
+        protected T computeNext() {
+            try {
+                if (!readRecord()) return endOfData();
+                final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                return type.cast(serializers.readObject(stream));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Checks whether the given number of bytes follows the current offset.
+         */
+        private boolean available(long bytes) throws IOException {
+            if (limit - offset >= bytes) return true;
+            limit = channel.size();
+            return limit - offset >= bytes;
+        }
+
+        /**
+         * Reads the next record into the payload buffer and verifies its checksums.
+         * The offset is only advanced if the record is valid.
+         *
+         * @return false at the end of the log or if the last record is incomplete
+         * @throws StreamCorruptedException if the record is corrupt
+         */
+        private boolean readRecord() throws IOException {
+            if (!available(1)) return false;
+            if (!available(RECORD_HEADER)) {
+                LOG.warn("Ignoring incomplete record at offset {} at the end of {}", offset, file);
+                return false;
+            }
+            final int size = in.readInt();
+            final int expected = in.readInt();
+            if (in.readInt() != headerChecksum(checksum, size, expected) || size <= 0) {
+                throw new StreamCorruptedException("corrupt record header at offset " + offset + " in " + file);
+            }
+            if (!available(RECORD_HEADER + (long) size)) {
+                // the header is valid, so the record really reaches the end of the file
+                LOG.warn("Ignoring incomplete record at offset {} at the end of {}", offset, file);
+                return false;
+            }
+
+            if (payload.length < size) {
+                payload = new byte[size];
+            }
+            in.readFully(payload, 0, size);
+            checksum.reset();
+            checksum.update(payload, 0, size);
+            if ((int) checksum.getValue() != expected) {
+                throw new StreamCorruptedException("checksum mismatch at offset " + offset + " in " + file);
+            }
+            length = size;
+            offset += RECORD_HEADER + size;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} which exposes its internal array.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        public Buffer() {
+            super(256);
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+    }
+
+}
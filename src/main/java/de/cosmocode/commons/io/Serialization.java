@@ -19,8 +19,14 @@ import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -34,6 +40,21 @@ import java.io.Serializable;
 /**
  * Static utility class for {@link Serializable}s.
  *
+ * <p>
+ *   Files are read and written using large buffers, so single fields don't cause
+ *   single system calls. Byte arrays are written into a buffer which is reused
+ *   by every thread, so only the final array has to be allocated.
+ * </p>
+ * <p>
+ *   The reused buffer is a plain byte array stored in a {@link ThreadLocal}, so it doesn't
+ *   keep the class loader of this library alive on pooled threads. Threads which are returned
+ *   to a pool can free it using {@link #releaseBuffer()}.
+ * </p>
+ * <p>
+ *   Methods taking {@link Serializers} use their compact format instead of
+ *   JDK serialization, which supports values which are not {@link Serializable}, too.
+ * </p>
+ *
  * @since 1.13
  * @author Willi Schoenborn
  */
@@ -41,6 +62,15 @@ public final class Serialization {
     
     private static final Logger LOG = LoggerFactory.getLogger(Serialization.class);
     
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    
+    private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+    
+    // holds only a byte array, no class of this library, and null while the buffer is in use
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+    
     private Serialization() {
         
     }
@@ -56,7 +86,7 @@ public final class Serialization {
      */
     public static void save(Serializable serializable, File file) throws IOException {
         Preconditions.checkNotNull(file, "File");
-        final OutputStream stream = new FileOutputStream(file);
+        final OutputStream stream = new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE);
         try {
             save(serializable, stream);
         } finally {
@@ -82,7 +112,8 @@ public final class Serialization {
         Preconditions.checkNotNull(out, "Out");
         final ObjectOutputStream stream = new ObjectOutputStream(out);
         stream.writeObject(serializable);
-        // do not close stream, as it would close out
+        // do not close stream, as it would close out, but write its buffered data
+        stream.flush();
         LOG.trace("Saved {} to {}", serializable, out);
     }
 
@@ -97,11 +128,111 @@ public final class Serialization {
      */
     public static byte[] save(Serializable serializable) throws IOException {
         Preconditions.checkNotNull(serializable, "Serializable");
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ReusableOutputStream buffer = acquire();
+        try {
+            save(serializable, buffer);
+            return buffer.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+    
+    private static ReusableOutputStream acquire() {
+        final byte[] array = BUFFER.get();
+        if (array == null) {
+            // first use or a custom writeObject method or serializer is saving another object
+            return new ReusableOutputStream(new byte[INITIAL_BUFFER_SIZE]);
+        }
+        BUFFER.set(null);
+        return new ReusableOutputStream(array);
+    }
+    
+    private static void release(ReusableOutputStream buffer) {
+        // larger buffers are not kept, so idle threads don't hold huge arrays
+        if (buffer.array().length <= MAX_REUSED_BUFFER_SIZE) {
+            BUFFER.set(buffer.array());
+        }
+    }
+    
+    /**
+     * Frees the buffer which is reused by the current thread to save objects to byte arrays.
+     * Threads of a pool can call this before they are returned to the pool.
+     * 
+     * @since 1.21
+     */
+    public static void releaseBuffer() {
+        BUFFER.remove();
+    }
+    
+    /**
+     * Saves the given serializable to a byte array, using a new buffer of the
+     * given initial size. Use this method instead of {@link #save(Serializable)}
+     * for large objects whose approximate size is known, to prevent repeated
+     * growing of the buffer.
+     * 
+     * @since 1.21
+     * @param serializable the object to be saved
+     * @param sizeHint the expected size of the serialized object in bytes
+     * @return the serialized object as a byte array
+     * @throws NullPointerException if serializable is null
+     * @throws IllegalArgumentException if sizeHint is negative
+     * @throws IOException if saving failed
+     */
+    public static byte[] save(Serializable serializable, int sizeHint) throws IOException {
+        Preconditions.checkNotNull(serializable, "Serializable");
+        Preconditions.checkArgument(sizeHint >= 0, "Size hint must not be negative, but was %s", sizeHint);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint);
         save(serializable, out);
         return out.toByteArray();
     }
     
+    /**
+     * Saves the given value to the specified output stream using the compact format
+     * of the given {@link Serializers} instead of JDK serialization.
+     * 
+     * <p>
+     *   The given output stream won't be closed.
+     * </p>
+     * 
+     * @since 1.21
+     * @param value the value to be saved, may be null
+     * @param out the target stream
+     * @param serializers the serializers to use
+     * @throws NullPointerException if out or serializers is null
+     * @throws IOException if saving failed
+     */
+    public static void save(@Nullable Object value, OutputStream out, Serializers serializers) throws IOException {
+        Preconditions.checkNotNull(out, "Out");
+        Preconditions.checkNotNull(serializers, "Serializers");
+        final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(out));
+        serializers.writeObject(value, stream);
+        // do not close stream, as it would close out
+        stream.flush();
+        LOG.trace("Saved {} to {}", value, out);
+    }
+    
+    /**
+     * Saves the given value to a byte array using the compact format
+     * of the given {@link Serializers} instead of JDK serialization.
+     * 
+     * @since 1.21
+     * @param value the value to be saved, may be null
+     * @param serializers the serializers to use
+     * @return the serialized value as a byte array
+     * @throws NullPointerException if serializers is null
+     * @throws IOException if saving failed
+     */
+    public static byte[] save(@Nullable Object value, Serializers serializers) throws IOException {
+        Preconditions.checkNotNull(serializers, "Serializers");
+        final ReusableOutputStream buffer = acquire();
+        try {
+            serializers.writeObject(value, new DataOutputStream(buffer));
+            return buffer.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+    
     /**
      * Restores an object from the specified file.
      * 
@@ -120,7 +251,7 @@ public final class Serialization {
         
         Preconditions.checkNotNull(type, "Type");
         Preconditions.checkNotNull(file, "File");
-        final InputStream stream = new FileInputStream(file);
+        final InputStream stream = new BufferedInputStream(new FileInputStream(file), FILE_BUFFER_SIZE);
         try {
             return restore(type, stream);
         } finally {
@@ -178,4 +309,78 @@ public final class Serialization {
         return restore(type, in);
     }
 
+    /**
+     * Restores a value from the specified input stream, which has been saved using
+     * {@link #save(Object, OutputStream, Serializers)} with the same serializers.
+     * 
+     * <p>
+     *   The given input stream won't be closed and is never read beyond the end of the value,
+     *   so several values can be restored from the same stream one after another.
+     *   Pass a buffered stream for best performance.
+     * </p>
+     * 
+     * @since 1.21
+     * @param <T> the generic value type
+     * @param type the class literal of T used for typesafe casting
+     * @param in the source stream
+     * @param serializers the serializers to use
+     * @return the read instance of T, may be null
+     * @throws NullPointerException if type, in or serializers is null
+     * @throws IOException if restoring failed
+     * @throws ClassNotFoundException if the read value references an unknown class
+     * @throws ClassCastException if the read value is not of type T
+     */
+    public static <T> T restore(Class<T> type, InputStream in, Serializers serializers) 
+        throws IOException, ClassNotFoundException {
+        
+        Preconditions.checkNotNull(type, "Type");
+        Preconditions.checkNotNull(in, "In");
+        Preconditions.checkNotNull(serializers, "Serializers");
+        final DataInputStream stream = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        final Object value = serializers.readObject(stream);
+        LOG.trace("Restored {} from {}", value, in);
+        return type.cast(value);
+    }
+    
+    /**
+     * Restores a value from the specified byte array, which has been saved using
+     * {@link #save(Object, Serializers)} with the same serializers.
+     * 
+     * @since 1.21
+     * @param <T> the generic value type
+     * @param type the class literal of T used for typesafe casting
+     * @param array the source array
+     * @param serializers the serializers to use
+     * @return the read instance of T, may be null
+     * @throws NullPointerException if type, array or serializers is null
+     * @throws IOException if restoring failed
+     * @throws ClassNotFoundException if the read value references an unknown class
+     * @throws ClassCastException if the read value is not of type T
+     */
+    public static <T> T restore(Class<T> type, byte[] array, Serializers serializers) 
+        throws IOException, ClassNotFoundException {
+        
+        Preconditions.checkNotNull(type, "Type");
+        Preconditions.checkNotNull(array, "Array");
+        Preconditions.checkNotNull(serializers, "Serializers");
+        final DataInputStream stream = new DataInputStream(new ByteArrayInputStream(array));
+        return type.cast(serializers.readObject(stream));
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} which writes into a given, reused array.
+     */
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+        
+        public ReusableOutputStream(byte[] array) {
+            super(0);
+            this.buf = array;
+        }
+        
+        public byte[] array() {
+            return buf;
+        }
+        
+    }
+
 }
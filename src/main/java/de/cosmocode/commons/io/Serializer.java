@@ -0,0 +1,60 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes and reads values of a single type in a compact binary format.
+ * Serializers are registered with a tag in {@link Serializers}, which writes the tag
+ * in front of every value, so serializers only write the value itself.
+ *
+ * <p>
+ *   Implementations have to be thread-safe. Nested values should be written and read
+ *   using {@link Serializers#writeObject(Object, DataOutputStream)} and
+ *   {@link Serializers#readObject(DataInputStream)} of the given registry.
+ * </p>
+ *
+ * @since 1.21
+ * @param <T> the generic type of the serialized values
+ */
+public interface Serializer<T> {
+
+    /**
+     * Writes the given value to the given stream.
+     *
+     * @param value the value to write, never null
+     * @param out the stream to write to
+     * @param serializers the registry used to write nested values
+     * @throws IOException if writing failed
+     */
+    void write(T value, DataOutputStream out, Serializers serializers) throws IOException;
+
+    /**
+     * Reads a value from the given stream, which has been written by {@link #write(Object,
+     * DataOutputStream, Serializers)}. Implementations must not read beyond the end of the value.
+     *
+     * @param in the stream to read from
+     * @param serializers the registry used to read nested values
+     * @return the read value
+     * @throws IOException if reading failed
+     * @throws ClassNotFoundException if the value references an unknown class
+     */
+    T read(DataInputStream in, Serializers serializers) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,404 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A registry of {@link Serializer}s, which writes values in a compact binary format
+ * using small integer tags instead of class descriptors.
+ *
+ * <p>
+ *   Every value is written as its tag, a variable-length integer, followed by the output
+ *   of its serializer. Every registry contains serializers for null, primitive wrappers,
+ *   strings, {@link java.util.Date}s, byte arrays, enums, lists, sets, maps,
+ *   {@link de.cosmocode.collections.utility.UtilityMap}s and
+ *   {@link de.cosmocode.collections.tree.TreeNode}s. Other {@link java.io.Serializable}s
+ *   are written using JDK serialization. Custom serializers can be registered
+ *   using {@link #builder()} with tags starting at {@link #FIRST_CUSTOM_TAG}.
+ *   Values have to be read using a registry with the same tags they were written with.
+ * </p>
+ * <p>
+ *   Collections and maps are read into new {@link java.util.ArrayList}s,
+ *   {@link java.util.LinkedHashSet}s and {@link java.util.LinkedHashMap}s, tree nodes into
+ *   {@link de.cosmocode.collections.tree.DuplicatesNode}s. Enum constants are written by name,
+ *   so constants can be reordered and inserted. Dates are only written compactly
+ *   if they are exactly of type {@link java.util.Date}. Shared and cyclic references
+ *   are not preserved, except within values written using JDK serialization.
+ * </p>
+ *
+ * @since 1.21
+ */
+@Immutable
+@ThreadSafe
+public final class Serializers {
+
+    /**
+     * The smallest tag which can be used for custom serializers.
+     */
+    public static final int FIRST_CUSTOM_TAG = 32;
+
+    private static final int NULL = 0;
+
+    private static final Serializers DEFAULTS = builder().build();
+
+    private final ImmutableMap<Integer, Entry> byTag;
+
+    private final ImmutableMap<Class<?>, Entry> byType;
+
+    // tested in order, custom entries first
+    private final ImmutableList<Entry> hierarchical;
+
+    private final boolean customHierarchical;
+
+    private final Entry fallback;
+
+    private final ConcurrentMap<Class<?>, Entry> resolved = new MapMaker().weakKeys().makeMap();
+
+    private Serializers(List<Entry> entries) {
+        final Map<Integer, Entry> tags = Maps.newHashMap();
+        final Map<Class<?>, Entry> types = Maps.newHashMap();
+        final ImmutableList.Builder<Entry> supertypes = ImmutableList.builder();
+        boolean custom = false;
+        for (Entry entry : entries) {
+            tags.put(entry.tag, entry);
+            if (entry.tag == BuiltInSerializer.JDK.getTag()) {
+                // only used as a fallback
+                continue;
+            } else if (entry.hierarchical) {
+                supertypes.add(entry);
+                custom |= entry.isCustom();
+            } else if (!types.containsKey(entry.type)) {
+                types.put(entry.type, entry);
+            }
+        }
+        this.byTag = ImmutableMap.copyOf(tags);
+        this.byType = ImmutableMap.copyOf(types);
+        this.hierarchical = supertypes.build();
+        this.customHierarchical = custom;
+        this.fallback = byTag.get(BuiltInSerializer.JDK.getTag());
+    }
+
+    /**
+     * Returns a registry containing only the built-in serializers.
+     *
+     * @return the default registry
+     */
+    public static Serializers defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Creates a new builder, which already contains all built-in serializers.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Writes the given value using its tag and its serializer.
+     *
+     * @param value the value to write, may be null
+     * @param out the stream to write to
+     * @throws NullPointerException if out is null
+     * @throws java.io.NotSerializableException if there is no serializer for value
+     *         and value is not {@link java.io.Serializable}
+     * @throws IOException if writing failed
+     */
+    public void writeObject(@Nullable Object value, DataOutputStream out) throws IOException {
+        Preconditions.checkNotNull(out, "Out");
+        if (value == null) {
+            writeVarInt(out, NULL);
+        } else {
+            final Entry entry = entryOf(value.getClass());
+            writeVarInt(out, entry.tag);
+            entry.serializer.write(value, out, this);
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeObject(Object, DataOutputStream)}.
+     *
+     * @param in the stream to read from
+     * @return the read value, may be null
+     * @throws NullPointerException if in is null
+     * @throws IOException if reading failed or the stream contains an unknown tag
+     * @throws ClassNotFoundException if the value references an unknown class
+     */
+    @Nullable
+    public Object readObject(DataInputStream in) throws IOException, ClassNotFoundException {
+        Preconditions.checkNotNull(in, "In");
+        final int tag = readVarInt(in);
+        if (tag == NULL) return null;
+        final Entry entry = byTag.get(tag);
+        if (entry == null) {
+            throw new StreamCorruptedException("unknown tag " + tag);
+        }
+        return entry.serializer.read(in, this);
+    }
+
+    /**
+     * Finds the serializer of the given type. Custom exact serializers are preferred over custom
+     * hierarchical ones, which are preferred over built-in exact ones and built-in hierarchical ones.
+     */
+    private Entry entryOf(Class<?> type) {
+        final Entry exact = byType.get(type);
+        if (exact != null && (exact.isCustom() || !customHierarchical)) return exact;
+        final Entry cached = resolved.get(type);
+        if (cached != null) return cached;
+
+        Entry found = exact;
+        for (Entry entry : hierarchical) {
+            if (found != null && !entry.isCustom()) {
+                // built-in exact serializers win over built-in hierarchical ones
+                break;
+            } else if (entry.type.isAssignableFrom(type)) {
+                found = entry;
+                break;
+            }
+        }
+        if (found == null) found = fallback;
+        resolved.put(type, found);
+        return found;
+    }
+
+    /**
+     * Writes a non-negative int using one to five bytes.
+     *
+     * @param out the output to write to
+     * @param value the value to write
+     * @throws IllegalArgumentException if value is negative
+     * @throws IOException if writing failed
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        Preconditions.checkArgument(value >= 0, "Value must not be negative, but was %s", value);
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    /**
+     * Reads a non-negative int written by {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param in the input to read from
+     * @return the read value
+     * @throws IOException if reading failed or the input contains no valid value
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) break;
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("malformed variable-length int");
+    }
+
+    /**
+     * Writes a long using one to ten bytes. Values with a small absolute value
+     * use less bytes, regardless of their sign.
+     *
+     * @param out the output to write to
+     * @param value the value to write
+     * @throws IOException if writing failed
+     */
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        // zig-zag encoding maps small negative values to small positive values
+        long remaining = (value << 1) ^ (value >> 63);
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    /**
+     * Reads a long written by {@link #writeSignedVarLong(DataOutput, long)}.
+     *
+     * @param in the input to read from
+     * @return the read value
+     * @throws IOException if reading failed or the input contains no valid value
+     */
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long raw = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            raw |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (raw >>> 1) ^ -(raw & 1);
+            }
+        }
+        throw new StreamCorruptedException("malformed variable-length long");
+    }
+
+    /**
+     * Writes a string of any length as UTF-8, prefixed by its length in bytes.
+     *
+     * @param out the output to write to
+     * @param value the value to write
+     * @throws IOException if writing failed
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(Charsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in the input to read from
+     * @return the read string
+     * @throws IOException if reading failed
+     */
+    public static String readString(DataInput in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "Serializers " + byTag.keySet();
+    }
+
+    /**
+     * A registered serializer.
+     */
+    private static final class Entry {
+
+        private final int tag;
+
+        private final Class<?> type;
+
+        private final boolean hierarchical;
+
+        private final Serializer<Object> serializer;
+
+        @SuppressWarnings("unchecked")
+        public Entry(int tag, Class<?> type, boolean hierarchical, Serializer<?> serializer) {
+            this.tag = tag;
+            this.type = type;
+            this.hierarchical = hierarchical;
+            this.serializer = (Serializer<Object>) serializer;
+        }
+
+        public boolean isCustom() {
+            return tag >= FIRST_CUSTOM_TAG;
+        }
+
+    }
+
+    /**
+     * A builder for {@link Serializers}.
+     */
+    public static final class Builder {
+
+        private final Map<Integer, Entry> custom = Maps.newLinkedHashMap();
+
+        private Builder() {
+
+        }
+
+        /**
+         * Registers a serializer for values which are exactly of the given type.
+         * Such serializers take precedence over all others.
+         *
+         * @param <T> the generic type of the values
+         * @param tag the tag identifying the serializer in the stream
+         * @param type the class of the values
+         * @param serializer the serializer
+         * @return this builder
+         * @throws NullPointerException if type or serializer is null
+         * @throws IllegalArgumentException if tag is smaller than {@link #FIRST_CUSTOM_TAG}
+         *         or already registered
+         */
+        public <T> Builder register(int tag, Class<T> type, Serializer<? super T> serializer) {
+            return add(tag, type, false, serializer);
+        }
+
+        /**
+         * Registers a serializer for values of the given type and all of its sub types.
+         * Such serializers are tested in registration order, after the custom serializers for exact
+         * types, but before all built-in ones, including those for exact types like {@link Integer}.
+         *
+         * @param <T> the generic type of the values
+         * @param tag the tag identifying the serializer in the stream
+         * @param type the super type of the values
+         * @param serializer the serializer
+         * @return this builder
+         * @throws NullPointerException if type or serializer is null
+         * @throws IllegalArgumentException if tag is smaller than {@link #FIRST_CUSTOM_TAG}
+         *         or already registered
+         */
+        public <T> Builder registerHierarchy(int tag, Class<T> type, Serializer<? super T> serializer) {
+            return add(tag, type, true, serializer);
+        }
+
+        private Builder add(int tag, Class<?> type, boolean hierarchical, Serializer<?> serializer) {
+            Preconditions.checkNotNull(type, "Type");
+            Preconditions.checkNotNull(serializer, "Serializer");
+            Preconditions.checkArgument(tag >= FIRST_CUSTOM_TAG, "Tag must be at least %s, but was %s",
+                FIRST_CUSTOM_TAG, tag);
+            Preconditions.checkArgument(!custom.containsKey(tag), "Tag %s is already registered", tag);
+            custom.put(tag, new Entry(tag, type, hierarchical, serializer));
+            return this;
+        }
+
+        /**
+         * Builds a new registry containing all built-in and all registered serializers.
+         *
+         * @return a new registry
+         */
+        public Serializers build() {
+            final List<Entry> entries = Lists.newArrayList(custom.values());
+            for (BuiltInSerializer serializer : BuiltInSerializer.values()) {
+                entries.add(new Entry(serializer.getTag(), serializer.getType(),
+                    serializer.isHierarchical(), serializer));
+            }
+            return new Serializers(entries);
+        }
+
+    }
+
+}
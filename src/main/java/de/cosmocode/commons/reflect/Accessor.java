@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A readable and/or writable property of a class, backed by a getter and setter
+ * or by a public field. An accessor is a {@link Function} which reads the property.
+ *
+ * <p>
+ *   Methods and fields are looked up once and made accessible, so calls
+ *   skip the access checks of the reflection api.
+ * </p>
+ *
+ * @since 1.21
+ * @param <T> the generic type of the declaring class
+ */
+@Immutable
+public final class Accessor<T> implements Function<T, Object> {
+
+    private final String name;
+
+    private final Class<?> type;
+
+    private final Method getter;
+
+    private final Method setter;
+
+    private final Field field;
+
+    private Accessor(String name, Class<?> type, Method getter, Method setter, Field field) {
+        this.name = name;
+        this.type = type;
+        this.getter = accessible(getter);
+        this.setter = accessible(setter);
+        this.field = accessible(field);
+    }
+
+    static <T> Accessor<T> of(String name, Class<?> type, @Nullable Method getter, @Nullable Method setter) {
+        return new Accessor<T>(name, type, getter, setter, null);
+    }
+
+    static <T> Accessor<T> of(Field field) {
+        return new Accessor<T>(field.getName(), field.getType(), null, null, field);
+    }
+
+    private static <A extends AccessibleObject> A accessible(A member) {
+        if (member == null) return null;
+        try {
+            member.setAccessible(true);
+        } catch (SecurityException e) {
+            // public members are accessible anyway, we just can't skip the checks
+        }
+        return member;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the type of this property.
+     *
+     * @return the declared type of this property
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isReadable() {
+        return getter != null || field != null;
+    }
+
+    public boolean isWritable() {
+        return setter != null || field != null && !Modifier.isFinal(field.getModifiers());
+    }
+
+    /**
+     * Reads this property of the given bean.
+     *
+     * @param bean the bean to read from
+     * @return the current value
+     * @throws NullPointerException if bean is null
+     * @throws UnsupportedOperationException if this property is not readable
+     * @throws RuntimeException any exception thrown by the getter
+     */
+    public Object get(T bean) {
+        Preconditions.checkNotNull(bean, "Bean");
+        try {
+            if (getter != null) {
+                return getter.invoke(bean);
+            } else if (field != null) {
+                return field.get(bean);
+            } else {
+                throw new UnsupportedOperationException(name + " is not readable");
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Writes this property of the given bean.
+     *
+     * @param bean the bean to write to
+     * @param value the new value
+     * @throws NullPointerException if bean is null
+     * @throws UnsupportedOperationException if this property is not writable
+     * @throws IllegalArgumentException if value is not of the type of this property
+     * @throws RuntimeException any exception thrown by the setter
+     */
+    public void set(T bean, @Nullable Object value) {
+        Preconditions.checkNotNull(bean, "Bean");
+        if (!isWritable()) {
+            throw new UnsupportedOperationException(name + " is not writable");
+        }
+        try {
+            if (setter != null) {
+                setter.invoke(bean, value);
+            } else {
+                field.set(bean, value);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public Object apply(@Nullable T input) {
+        return get(input);
+    }
+
+    @Override
+    public String toString() {
+        return "Accessor [name=" + name + ", type=" + type.getName() + "]";
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import de.cosmocode.collections.utility.Utility;
+import de.cosmocode.collections.utility.UtilityMap;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * All {@link Accessor}s of a class, i.e. its bean properties and public instance fields.
+ * Fields are only used if there is no property with the same name.
+ *
+ * @since 1.21
+ * @param <T> the generic type of the inspected class
+ */
+@Immutable
+public final class Accessors<T> implements Iterable<Accessor<T>> {
+
+    // accessors reference their class through its methods and fields, so weak class keys alone
+    // never unload anything; every class loader gets its own cache, which can be released
+    private static final LoadingCache<ClassLoader, LoadingCache<Class<?>, Accessors<?>>> CACHES =
+        CacheBuilder.newBuilder().weakKeys().build(
+            new CacheLoader<ClassLoader, LoadingCache<Class<?>, Accessors<?>>>() {
+
+                @Override
+                public LoadingCache<Class<?>, Accessors<?>> load(ClassLoader loader) {
+                    return newCache();
+                }
+
+            });
+
+    private static final LoadingCache<Class<?>, Accessors<?>> BOOTSTRAP = newCache();
+
+    private final Class<T> type;
+
+    private final ImmutableMap<String, Accessor<T>> accessors;
+
+    private Accessors(Class<T> type, ImmutableMap<String, Accessor<T>> accessors) {
+        this.type = type;
+        this.accessors = accessors;
+    }
+
+    /**
+     * Returns the accessors of the given type, which are discovered once and cached.
+     *
+     * @param <T> the generic type of the class
+     * @param type the class to inspect
+     * @return all accessors of type
+     * @throws NullPointerException if type is null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Accessors<T> of(Class<T> type) {
+        Preconditions.checkNotNull(type, "Type");
+        final ClassLoader loader = type.getClassLoader();
+        final LoadingCache<Class<?>, Accessors<?>> cache = loader == null ? BOOTSTRAP : CACHES.getUnchecked(loader);
+        return (Accessors<T>) cache.getUnchecked(type);
+    }
+
+    /**
+     * Drops the cached accessors of all classes defined by the given class loader.
+     *
+     * @param loader the class loader
+     * @throws NullPointerException if loader is null
+     */
+    static void release(ClassLoader loader) {
+        Preconditions.checkNotNull(loader, "Loader");
+        CACHES.invalidate(loader);
+    }
+
+    /**
+     * Soft values allow the garbage collector to drop accessors under memory pressure,
+     * which also releases their classes.
+     */
+    private static LoadingCache<Class<?>, Accessors<?>> newCache() {
+        return CacheBuilder.newBuilder().weakKeys().softValues().build(new CacheLoader<Class<?>, Accessors<?>>() {
+
+            @Override
+            public Accessors<?> load(Class<?> type) {
+                return discover(type);
+            }
+
+        });
+    }
+
+    private static <T> Accessors<T> discover(Class<T> type) {
+        final Map<String, Accessor<T>> accessors = Maps.newLinkedHashMap();
+        final BeanInfo info;
+        try {
+            info = Introspector.getBeanInfo(type);
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+            // getClass() is no property
+            if ("class".equals(descriptor.getName()) || descriptor.getPropertyType() == null) continue;
+            accessors.put(descriptor.getName(), Accessor.<T>of(descriptor.getName(),
+                descriptor.getPropertyType(), descriptor.getReadMethod(), descriptor.getWriteMethod()));
+        }
+
+        for (Field field : type.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || accessors.containsKey(field.getName())) continue;
+            accessors.put(field.getName(), Accessor.<T>of(field));
+        }
+
+        return new Accessors<T>(type, ImmutableMap.copyOf(accessors));
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the names of all accessors in a stable order.
+     *
+     * @return the names of all accessors
+     */
+    public Set<String> getNames() {
+        return accessors.keySet();
+    }
+
+    /**
+     * Returns the accessor with the given name.
+     *
+     * @param name the name of the property or field
+     * @return the accessor or null if there is no such accessor
+     */
+    @Nullable
+    public Accessor<T> get(String name) {
+        return accessors.get(name);
+    }
+
+    /**
+     * Reads all readable accessors of the given bean into a new {@link UtilityMap}.
+     *
+     * @param bean the bean to read
+     * @return a new mutable map of all readable names to their current values
+     * @throws NullPointerException if bean is null
+     */
+    public UtilityMap<String, Object> toMap(T bean) {
+        Preconditions.checkNotNull(bean, "Bean");
+        final Map<String, Object> map = Maps.newLinkedHashMap();
+        for (Accessor<T> accessor : accessors.values()) {
+            if (accessor.isReadable()) {
+                map.put(accessor.getName(), accessor.get(bean));
+            }
+        }
+        return Utility.asUtilityMap(map);
+    }
+
+    @Override
+    public Iterator<Accessor<T>> iterator() {
+        return accessors.values().iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "Reflection.accessors(" + type.getName() + ")";
+    }
+
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Modifier;
+
+/**
+ * The header of a class file, i.e. its name, access flags, super types and
+ * runtime-visible annotations, which is read straight from the bytes of the
+ * class file without loading the class.
+ *
+ * <p>
+ *   All names are binary names as returned by {@link Class#getName()}.
+ * </p>
+ *
+ * @since 1.21
+ */
+@Immutable
+final class ClassFile {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_ANNOTATION = 0x2000;
+
+    private static final int ACC_ENUM = 0x4000;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final String name;
+
+    private final int accessFlags;
+
+    private final String superName;
+
+    private final ImmutableList<String> interfaceNames;
+
+    private final ImmutableSet<String> annotationNames;
+
+    ClassFile(String name, int accessFlags, @Nullable String superName,
+        ImmutableList<String> interfaceNames, ImmutableSet<String> annotationNames) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+        this.accessFlags = accessFlags;
+        this.superName = superName;
+        this.interfaceNames = Preconditions.checkNotNull(interfaceNames, "InterfaceNames");
+        this.annotationNames = Preconditions.checkNotNull(annotationNames, "AnnotationNames");
+    }
+
+    /**
+     * Reads the header of a class file from the given stream. The stream is
+     * read up to the end of the class file, but not closed.
+     *
+     * @param stream the stream to read from
+     * @return the header of the read class file
+     * @throws NullPointerException if stream is null
+     * @throws IOException if reading failed or the stream contains no class file
+     */
+    public static ClassFile read(InputStream stream) throws IOException {
+        Preconditions.checkNotNull(stream, "Stream");
+        final DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("stream contains no class file");
+        }
+        // minor and major version
+        in.readInt();
+
+        final ConstantPool pool = new ConstantPool(in);
+        final int accessFlags = in.readUnsignedShort();
+        final String name = pool.getClassName(in.readUnsignedShort());
+        final int superIndex = in.readUnsignedShort();
+        final String superName = superIndex == 0 ? null : pool.getClassName(superIndex);
+
+        final int interfaceCount = in.readUnsignedShort();
+        final ImmutableList.Builder<String> interfaceNames = ImmutableList.builder();
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaceNames.add(pool.getClassName(in.readUnsignedShort()));
+        }
+
+        // fields and methods share the same structure
+        for (int members = 0; members < 2; members++) {
+            final int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                // access flags, name and descriptor
+                skip(in, 6);
+                skipAttributes(in);
+            }
+        }
+
+        final ImmutableSet.Builder<String> annotationNames = ImmutableSet.builder();
+        final int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            final String attribute = pool.getUtf8(in.readUnsignedShort());
+            final long length = in.readInt() & 0xFFFFFFFFL;
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attribute)) {
+                final int annotationCount = in.readUnsignedShort();
+                for (int j = 0; j < annotationCount; j++) {
+                    annotationNames.add(readAnnotation(in, pool));
+                }
+            } else {
+                skip(in, length);
+            }
+        }
+
+        return new ClassFile(name, accessFlags, superName, interfaceNames.build(), annotationNames.build());
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.readUnsignedShort();
+            skip(in, in.readInt() & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Reads an annotation and returns its type name.
+     */
+    private static String readAnnotation(DataInputStream in, ConstantPool pool) throws IOException {
+        final String descriptor = pool.getUtf8(in.readUnsignedShort());
+        final int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            in.readUnsignedShort();
+            skipElementValue(in, pool);
+        }
+        return descriptorToName(descriptor);
+    }
+
+    private static void skipElementValue(DataInputStream in, ConstantPool pool) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 's':
+            case 'c': {
+                skip(in, 2);
+                break;
+            }
+            case 'e': {
+                skip(in, 4);
+                break;
+            }
+            case '@': {
+                readAnnotation(in, pool);
+                break;
+            }
+            case '[': {
+                final int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    skipElementValue(in, pool);
+                }
+                break;
+            }
+            default: {
+                throw new StreamCorruptedException("unknown element value tag " + (char) tag);
+            }
+        }
+    }
+
+    private static void skip(InputStream in, long bytes) throws IOException {
+        ByteStreams.skipFully(in, bytes);
+    }
+
+    private static String descriptorToName(String descriptor) {
+        // Lcom/example/Type; -> com.example.Type
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the access flags of this class, which can be inspected using {@link Modifier}.
+     *
+     * @return the access flags
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * Returns the name of the super class.
+     *
+     * @return the name of the super class, null for {@link Object}
+     */
+    @Nullable
+    public String getSuperName() {
+        return superName;
+    }
+
+    public ImmutableList<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * Returns the names of all annotations which are directly present
+     * on this class and retained at runtime.
+     *
+     * @return the names of all runtime-visible class annotations
+     */
+    public ImmutableSet<String> getAnnotationNames() {
+        return annotationNames;
+    }
+
+    public boolean isInterface() {
+        return Modifier.isInterface(accessFlags);
+    }
+
+    public boolean isAnnotation() {
+        return (accessFlags & ACC_ANNOTATION) != 0;
+    }
+
+    public boolean isEnum() {
+        return (accessFlags & ACC_ENUM) != 0;
+    }
+
+    public boolean isAbstract() {
+        return Modifier.isAbstract(accessFlags);
+    }
+
+    @Override
+    public String toString() {
+        return "ClassFile [name=" + name + ", superName=" + superName + ", interfaceNames=" + interfaceNames +
+            ", annotationNames=" + annotationNames + "]";
+    }
+
+    /**
+     * The constant pool of a class file. Only utf8 and class entries are kept.
+     */
+    private static final class ConstantPool {
+
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int FLOAT = 4;
+        private static final int LONG = 5;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int STRING = 8;
+        private static final int FIELD_REF = 9;
+        private static final int METHOD_REF = 10;
+        private static final int INTERFACE_METHOD_REF = 11;
+        private static final int NAME_AND_TYPE = 12;
+        private static final int METHOD_HANDLE = 15;
+        private static final int METHOD_TYPE = 16;
+        private static final int DYNAMIC = 17;
+        private static final int INVOKE_DYNAMIC = 18;
+        private static final int MODULE = 19;
+        private static final int PACKAGE = 20;
+
+        private final String[] utf8;
+
+        // index of the utf8 entry of class entries
+        private final int[] classes;
+
+        public ConstantPool(DataInputStream in) throws IOException {
+            final int count = in.readUnsignedShort();
+            this.utf8 = new String[count];
+            this.classes = new int[count];
+
+            // entry 0 is unused
+            for (int i = 1; i < count; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case UTF8: {
+                        utf8[i] = in.readUTF();
+                        break;
+                    }
+                    case CLASS: {
+                        classes[i] = in.readUnsignedShort();
+                        break;
+                    }
+                    case STRING:
+                    case METHOD_TYPE:
+                    case MODULE:
+                    case PACKAGE: {
+                        skip(in, 2);
+                        break;
+                    }
+                    case METHOD_HANDLE: {
+                        skip(in, 3);
+                        break;
+                    }
+                    case INTEGER:
+                    case FLOAT:
+                    case FIELD_REF:
+                    case METHOD_REF:
+                    case INTERFACE_METHOD_REF:
+                    case NAME_AND_TYPE:
+                    case DYNAMIC:
+                    case INVOKE_DYNAMIC: {
+                        skip(in, 4);
+                        break;
+                    }
+                    case LONG:
+                    case DOUBLE: {
+                        // 8 byte constants take two entries
+                        skip(in, 8);
+                        i++;
+                        break;
+                    }
+                    default: {
+                        throw new StreamCorruptedException("unknown constant pool tag " + tag);
+                    }
+                }
+            }
+        }
+
+        public String getUtf8(int index) throws IOException {
+            if (index <= 0 || index >= utf8.length || utf8[index] == null) {
+                throw new StreamCorruptedException("no utf8 constant at " + index);
+            }
+            return utf8[index];
+        }
+
+        public String getClassName(int index) throws IOException {
+            if (index <= 0 || index >= classes.length || classes[index] == 0) {
+                throw new StreamCorruptedException("no class constant at " + index);
+            }
+            return getUtf8(classes[index]).replace('/', '.');
+        }
+
+    }
+
+}
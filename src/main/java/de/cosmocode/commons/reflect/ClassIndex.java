@@ -0,0 +1,159 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The format of the class index which is generated at compile time by the {@link ClassIndexProcessor}
+ * and stored in every classpath entry at {@link #LOCATION}.
+ *
+ * <p>
+ *   The index is a UTF-8 text file. The first line is a header containing the version of the format,
+ *   followed by one line per class, sorted by name. Every line contains the name, the access flags,
+ *   the super class, the interfaces and the runtime-visible annotations of a class separated by tabs.
+ *   Interfaces and annotations are separated by commas. All names are binary names.
+ * </p>
+ * <p>
+ *   Anonymous and local classes, package-info and module-info are never part of an index,
+ *   because annotation processors can't see them, see {@link #isIndexed(String)}.
+ * </p>
+ *
+ * @since 1.21
+ */
+final class ClassIndex {
+
+    /**
+     * The location of the index relative to the root of a classpath entry.
+     */
+    public static final String LOCATION = "META-INF/de.cosmocode.commons.reflect.classes";
+
+    private static final String HEADER = "# class index 1";
+
+    private static final Splitter FIELDS = Splitter.on('\t');
+
+    private static final Joiner FIELD_JOINER = Joiner.on('\t');
+
+    private static final Splitter NAMES = Splitter.on(',').omitEmptyStrings();
+
+    private static final Joiner NAME_JOINER = Joiner.on(',');
+
+    private ClassIndex() {
+
+    }
+
+    /**
+     * Checks whether the class with the given binary name belongs into an index. Anonymous and
+     * local classes are recognized by a simple name starting with a digit after a dollar sign,
+     * as generated by all common compilers.
+     *
+     * @param name the binary name of a class
+     * @return false for anonymous and local classes, package-info and module-info, true otherwise
+     * @throws NullPointerException if name is null
+     */
+    public static boolean isIndexed(String name) {
+        Preconditions.checkNotNull(name, "Name");
+        final String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        if ("package-info".equals(simpleName) || "module-info".equals(simpleName)) return false;
+        for (int i = simpleName.indexOf('$'); i != -1; i = simpleName.indexOf('$', i + 1)) {
+            if (i + 1 < simpleName.length() && Character.isDigit(simpleName.charAt(i + 1))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the given classes to the given writer. The writer is not closed.
+     *
+     * @param writer the writer to write to
+     * @param classes the classes to write
+     * @throws NullPointerException if writer or classes is null
+     * @throws IOException if writing failed
+     */
+    public static void write(Writer writer, Iterable<ClassFile> classes) throws IOException {
+        Preconditions.checkNotNull(writer, "Writer");
+        Preconditions.checkNotNull(classes, "Classes");
+        final Map<String, ClassFile> sorted = Maps.newTreeMap();
+        for (ClassFile file : classes) {
+            sorted.put(file.getName(), file);
+        }
+
+        writer.write(HEADER);
+        writer.write('\n');
+        for (ClassFile file : sorted.values()) {
+            FIELD_JOINER.appendTo(writer,
+                file.getName(),
+                Integer.toString(file.getAccessFlags()),
+                file.getSuperName() == null ? "" : file.getSuperName(),
+                NAME_JOINER.join(file.getInterfaceNames()),
+                NAME_JOINER.join(file.getAnnotationNames())
+            );
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads an index from the given stream. The stream is not closed.
+     *
+     * @param stream the stream to read from
+     * @return all indexed classes by their name, sorted by name
+     * @throws NullPointerException if stream is null
+     * @throws IOException if reading failed or the stream contains no valid index
+     */
+    public static Map<String, ClassFile> read(InputStream stream) throws IOException {
+        Preconditions.checkNotNull(stream, "Stream");
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charsets.UTF_8));
+        if (!HEADER.equals(reader.readLine())) {
+            throw new StreamCorruptedException("stream contains no class index");
+        }
+
+        final Map<String, ClassFile> classes = Maps.newTreeMap();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            final Iterator<String> fields = FIELDS.split(line).iterator();
+            try {
+                final String name = fields.next();
+                final int accessFlags = Integer.parseInt(fields.next());
+                final String superName = fields.next();
+                final ImmutableList<String> interfaceNames = ImmutableList.copyOf(NAMES.split(fields.next()));
+                final ImmutableSet<String> annotationNames = ImmutableSet.copyOf(NAMES.split(fields.next()));
+                classes.put(name, new ClassFile(name, accessFlags, superName.isEmpty() ? null : superName,
+                    interfaceNames, annotationNames));
+            } catch (RuntimeException e) {
+                // missing fields or illegal access flags
+                throw new StreamCorruptedException("illegal line in class index: " + line);
+            }
+        }
+        return classes;
+    }
+
+}
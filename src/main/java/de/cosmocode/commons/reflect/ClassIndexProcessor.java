@@ -0,0 +1,183 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An annotation processor which writes a {@link ClassIndex} of all compiled classes
+ * to the class output, so {@link Classpath}s can answer from the index instead of scanning
+ * the classpath entry at runtime.
+ *
+ * <p>
+ *   The processor is not registered as a service, it has to be enabled explicitly, e.g. using
+ *   {@code -processor de.cosmocode.commons.reflect.ClassIndexProcessor} or the
+ *   {@code annotationProcessors} of the maven-compiler-plugin.
+ * </p>
+ * <p>
+ *   Anonymous and local classes are not part of the index. The index only contains the classes
+ *   of a single compilation. Classpath entries whose classes don't match their index,
+ *   e.g. after an incremental build, are scanned instead.
+ * </p>
+ *
+ * @since 1.21
+ */
+@SupportedAnnotationTypes("*")
+public final class ClassIndexProcessor extends AbstractProcessor {
+
+    private static final int ACC_PUBLIC = 0x0001;
+
+    private static final int ACC_FINAL = 0x0010;
+
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ACC_INTERFACE = 0x0200;
+
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int ACC_ANNOTATION = 0x2000;
+
+    private static final int ACC_ENUM = 0x4000;
+
+    private final Map<String, ClassFile> classes = Maps.newHashMap();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (Element element : round.getRootElements()) {
+            visit(element);
+        }
+        if (round.processingOver() && !classes.isEmpty()) {
+            write();
+        }
+        // annotations are never claimed, other processors still see them
+        return false;
+    }
+
+    private void visit(Element element) {
+        if (!element.getKind().isClass() && !element.getKind().isInterface()) return;
+        final TypeElement type = (TypeElement) element;
+        final ClassFile file = toClassFile(type);
+        classes.put(file.getName(), file);
+        for (Element enclosed : type.getEnclosedElements()) {
+            visit(enclosed);
+        }
+    }
+
+    /**
+     * Computes the header which javac writes to the class file of the given type.
+     */
+    private ClassFile toClassFile(TypeElement type) {
+        final String name = nameOf(type);
+        final ImmutableList.Builder<String> interfaceNames = ImmutableList.builder();
+        for (TypeMirror mirror : type.getInterfaces()) {
+            interfaceNames.add(nameOf(mirror));
+        }
+
+        final ImmutableSet.Builder<String> annotationNames = ImmutableSet.builder();
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            final Element annotation = mirror.getAnnotationType().asElement();
+            final Retention retention = annotation.getAnnotation(Retention.class);
+            if (retention != null && retention.value() == RetentionPolicy.RUNTIME) {
+                annotationNames.add(nameOf((TypeElement) annotation));
+            }
+        }
+
+        final String superName;
+        if (type.getKind().isInterface()) {
+            superName = Object.class.getName();
+        } else if (type.getSuperclass().getKind() == TypeKind.NONE) {
+            // java.lang.Object
+            superName = null;
+        } else {
+            superName = nameOf(type.getSuperclass());
+        }
+
+        return new ClassFile(name, accessFlagsOf(type), superName, interfaceNames.build(), annotationNames.build());
+    }
+
+    private int accessFlagsOf(TypeElement type) {
+        final Set<Modifier> modifiers = type.getModifiers();
+        // nested classes can't be protected or private on class file level
+        int flags = modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED) ? ACC_PUBLIC : 0;
+        if (type.getKind() == ElementKind.ANNOTATION_TYPE) {
+            flags |= ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION;
+        } else if (type.getKind() == ElementKind.INTERFACE) {
+            flags |= ACC_INTERFACE | ACC_ABSTRACT;
+        } else {
+            flags |= ACC_SUPER;
+            if (type.getKind() == ElementKind.ENUM) flags |= ACC_ENUM;
+            if (modifiers.contains(Modifier.FINAL)) flags |= ACC_FINAL;
+            if (modifiers.contains(Modifier.ABSTRACT)) flags |= ACC_ABSTRACT;
+        }
+        return flags;
+    }
+
+    private String nameOf(TypeMirror mirror) {
+        return nameOf((TypeElement) ((DeclaredType) mirror).asElement());
+    }
+
+    private String nameOf(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void write() {
+        try {
+            final FileObject resource = processingEnv.getFiler().createResource(
+                StandardLocation.CLASS_OUTPUT, "", ClassIndex.LOCATION);
+            final Writer writer = new OutputStreamWriter(resource.openOutputStream(), Charsets.UTF_8);
+            try {
+                ClassIndex.write(writer, classes.values());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "Unable to write " + ClassIndex.LOCATION + ": " + e.getMessage());
+        }
+    }
+
+}
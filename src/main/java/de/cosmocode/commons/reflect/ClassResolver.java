@@ -0,0 +1,107 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Resolves and caches classes by their name for a single {@link ClassLoader}.
+ *
+ * <p>
+ *   Resolvers are cached weakly by their class loader. Resolved classes are
+ *   referenced weakly as well, which is sufficient, because a class can't be
+ *   unloaded before its class loader. Names which can't be resolved are cached too,
+ *   up to a fixed maximum, so repeated lookups of missing classes don't search the
+ *   class loader again. Classes which are defined after a failed lookup are therefore
+ *   not found by this resolver.
+ * </p>
+ *
+ * @since 1.21
+ */
+@ThreadSafe
+final class ClassResolver {
+
+    private static final int MAX_MISSES = 10000;
+
+    private static final LoadingCache<ClassLoader, ClassResolver> RESOLVERS = CacheBuilder.newBuilder().
+        weakKeys().build(new CacheLoader<ClassLoader, ClassResolver>() {
+
+            @Override
+            public ClassResolver load(ClassLoader loader) {
+                return new ClassResolver();
+            }
+
+        });
+
+    // the bootstrap class loader is represented by null, which can't be a key
+    private static final ClassResolver BOOTSTRAP = new ClassResolver();
+
+    private final Cache<String, Class<?>> classes = CacheBuilder.newBuilder().weakValues().build();
+
+    private final Cache<String, Boolean> misses = CacheBuilder.newBuilder().maximumSize(MAX_MISSES).build();
+
+    private ClassResolver() {
+
+    }
+
+    /**
+     * Returns the resolver of the given class loader.
+     *
+     * @param loader the class loader, null for the bootstrap class loader
+     * @return the resolver of loader
+     */
+    public static ClassResolver of(@Nullable ClassLoader loader) {
+        return loader == null ? BOOTSTRAP : RESOLVERS.getUnchecked(loader);
+    }
+
+    /**
+     * Resolves and initializes the class with the given name using the given class loader,
+     * which has to be the class loader of this resolver.
+     *
+     * @param name the binary name of the class
+     * @param loader the class loader of this resolver
+     * @return the resolved class
+     * @throws NullPointerException if name is null
+     * @throws ClassNotFoundException if there is no such class
+     */
+    public Class<?> resolve(String name, @Nullable ClassLoader loader) throws ClassNotFoundException {
+        Preconditions.checkNotNull(name, "Name");
+        final Class<?> cached = classes.getIfPresent(name);
+        if (cached != null) {
+            return cached;
+        } else if (misses.getIfPresent(name) != null) {
+            throw new ClassNotFoundException(name);
+        }
+
+        final Class<?> type;
+        try {
+            type = Class.forName(name, true, loader);
+        } catch (ClassNotFoundException e) {
+            misses.put(name, Boolean.TRUE);
+            throw e;
+        }
+        classes.put(name, type);
+        return type;
+    }
+
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An on-disk cache of the {@link ClassFile} headers of classpath entries.
+ *
+ * <p>
+ *   Every entry is stored in its own index file, named after the hash of its path.
+ *   An index file is valid as long as the size and the last modification time
+ *   of its entry don't change. For directories the number of files and the latest
+ *   modification time of all files and directories below it are used instead.
+ * </p>
+ * <p>
+ *   Classes are stored sorted by name together with a table of offsets, so only the
+ *   classes of the requested packages are decoded, which are found using a binary search.
+ *   Index files are neither loaded completely nor memory-mapped: the header, the offset table
+ *   and the visited records are read using positional reads of a {@link FileChannel}, which
+ *   is closed before returning. This way an index file can be replaced at any time, whereas
+ *   a mapping would prevent that on some platforms until it is garbage collected.
+ * </p>
+ * <p>
+ *   Index files are written to a temporary file first and renamed afterwards,
+ *   so several processes can share the same index directory.
+ * </p>
+ *
+ * @since 1.21
+ */
+@ThreadSafe
+final class ClasspathIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathIndex.class);
+
+    private static final int MAGIC = 0x43435049;
+
+    private static final int VERSION = 1;
+
+    // magic, version, size, modified, count
+    private static final int HEADER = 4 + 4 + 8 + 8 + 4;
+
+    private final File directory;
+
+    public ClasspathIndex(File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+    }
+
+    /**
+     * Reads all classes of the given packages from the index of the given classpath entry.
+     *
+     * @param entry the classpath entry, a jar or a directory
+     * @param fingerprint the current fingerprint of entry
+     * @param packages the requested packages
+     * @return all indexed classes of the given packages sorted by name, or null if
+     *         there is no valid index for entry
+     */
+    @Nullable
+    public Map<String, ClassFile> get(File entry, Fingerprint fingerprint, Set<String> packages) {
+        final File file = fileOf(entry);
+        if (!file.isFile()) return null;
+
+        try {
+            final FileInputStream stream = new FileInputStream(file);
+            try {
+                final FileChannel channel = stream.getChannel();
+                final ByteBuffer header = read(channel, 0, HEADER);
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    LOG.debug("Ignoring index {} of unknown format", file);
+                    return null;
+                }
+                if (header.getLong() != fingerprint.size || header.getLong() != fingerprint.modified) {
+                    LOG.debug("Index {} of {} is outdated", file, entry);
+                    return null;
+                }
+
+                final int count = header.getInt();
+                Preconditions.checkState(count >= 0 && HEADER + 4L * count <= channel.size(),
+                    "Illegal number of classes %s", count);
+                final IntBuffer offsets = read(channel, HEADER, 4 * count).asIntBuffer();
+                final Map<String, ClassFile> classes = Maps.newTreeMap();
+                for (String prefix : packages) {
+                    readPackage(channel, offsets, prefix + ".", classes);
+                }
+                return classes;
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read index " + file, e);
+            return null;
+        } catch (RuntimeException e) {
+            // buffer underflows, illegal offsets or negative lengths
+            LOG.warn("Index " + file + " is corrupt", e);
+            return null;
+        }
+    }
+
+    private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Index ends before position " + (position + length));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Finds the first class starting with prefix using a binary search
+     * and reads all following classes with the same prefix.
+     */
+    private void readPackage(FileChannel channel, IntBuffer offsets, String prefix,
+        Map<String, ClassFile> classes) throws IOException {
+        final int count = offsets.limit();
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (readString(readRecord(channel, offsets, middle)).compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low; i < count; i++) {
+            final ByteBuffer record = readRecord(channel, offsets, i);
+            final String name = readString(record);
+            if (!name.startsWith(prefix)) break;
+            classes.put(name, readClass(record, name));
+        }
+    }
+
+    /**
+     * Reads the record at the given index, which ends where the next one starts.
+     */
+    private ByteBuffer readRecord(FileChannel channel, IntBuffer offsets, int index) throws IOException {
+        final long start = offsets.get(index);
+        final long end = index + 1 < offsets.limit() ? offsets.get(index + 1) : channel.size();
+        Preconditions.checkState(start >= HEADER + 4L * offsets.limit() && start <= end,
+            "Illegal offset %s of class %s", start, index);
+        return read(channel, start, (int) (end - start));
+    }
+
+    private ClassFile readClass(ByteBuffer buffer, String name) {
+        final int accessFlags = buffer.getInt();
+        final String superName = readString(buffer);
+        final int interfaceCount = buffer.getInt();
+        final ImmutableList.Builder<String> interfaceNames = ImmutableList.builder();
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaceNames.add(readString(buffer));
+        }
+        final int annotationCount = buffer.getInt();
+        final ImmutableSet.Builder<String> annotationNames = ImmutableSet.builder();
+        for (int i = 0; i < annotationCount; i++) {
+            annotationNames.add(readString(buffer));
+        }
+        return new ClassFile(name, accessFlags, superName.isEmpty() ? null : superName,
+            interfaceNames.build(), annotationNames.build());
+    }
+
+    private String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Writes the index of the given classpath entry.
+     *
+     * @param entry the classpath entry, a jar or a directory
+     * @param fingerprint the fingerprint of entry, taken before it was scanned
+     * @param classes all classes of the given entry
+     * @throws IOException if writing failed
+     */
+    public void put(File entry, Fingerprint fingerprint, Map<String, ClassFile> classes) throws IOException {
+        final Map<String, ClassFile> byName = Maps.newTreeMap();
+        byName.putAll(classes);
+        final List<ClassFile> sorted = Lists.newArrayList(byName.values());
+
+        // records are written first, because the offset table precedes them
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(records);
+        final int[] offsets = new int[sorted.size()];
+        final int start = HEADER + 4 * sorted.size();
+        for (int i = 0; i < sorted.size(); i++) {
+            offsets[i] = start + out.size();
+            writeClass(out, sorted.get(i));
+        }
+        out.flush();
+
+        Files.createParentDirs(fileOf(entry));
+        final File temporary = File.createTempFile("index", ".tmp", directory);
+        try {
+            final OutputStream stream = new BufferedOutputStream(new FileOutputStream(temporary));
+            try {
+                final DataOutputStream data = new DataOutputStream(stream);
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeLong(fingerprint.size);
+                data.writeLong(fingerprint.modified);
+                data.writeInt(sorted.size());
+                for (int offset : offsets) {
+                    data.writeInt(offset);
+                }
+                records.writeTo(data);
+                data.flush();
+            } finally {
+                stream.close();
+            }
+            final File file = fileOf(entry);
+            if (!temporary.renameTo(file)) {
+                // some platforms can't replace existing files
+                file.delete();
+                if (!temporary.renameTo(file)) {
+                    throw new IOException("Unable to replace " + file);
+                }
+            }
+        } finally {
+            if (temporary.exists()) {
+                temporary.delete();
+            }
+        }
+    }
+
+    private void writeClass(DataOutputStream out, ClassFile file) throws IOException {
+        writeString(out, file.getName());
+        out.writeInt(file.getAccessFlags());
+        writeString(out, file.getSuperName() == null ? "" : file.getSuperName());
+        out.writeInt(file.getInterfaceNames().size());
+        for (String name : file.getInterfaceNames()) {
+            writeString(out, name);
+        }
+        out.writeInt(file.getAnnotationNames().size());
+        for (String name : file.getAnnotationNames()) {
+            writeString(out, name);
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private File fileOf(File entry) {
+        final String hash = Hashing.md5().hashString(entry.getAbsolutePath(), Charsets.UTF_8).toString();
+        return new File(directory, hash + ".idx");
+    }
+
+    @Override
+    public String toString() {
+        return "ClasspathIndex [directory=" + directory + "]";
+    }
+
+    /**
+     * The size and modification time of a classpath entry.
+     */
+    static final class Fingerprint {
+
+        private long size;
+
+        private long modified;
+
+        private Fingerprint() {
+
+        }
+
+        /**
+         * Computes the fingerprint of the given classpath entry. This walks
+         * all files below directories, but doesn't read them.
+         *
+         * @param entry the classpath entry, a jar or a directory
+         * @return the current fingerprint of entry
+         */
+        public static Fingerprint of(File entry) {
+            final Fingerprint fingerprint = new Fingerprint();
+            if (entry.isDirectory()) {
+                fingerprint.visit(entry);
+            } else {
+                fingerprint.size = entry.length();
+                fingerprint.modified = entry.lastModified();
+            }
+            return fingerprint;
+        }
+
+        private void visit(File directory) {
+            // deleting a file changes the modification time of its directory
+            modified = Math.max(modified, directory.lastModified());
+            final File[] children = directory.listFiles();
+            if (children == null) return;
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    visit(child);
+                } else {
+                    size++;
+                    modified = Math.max(modified, child.lastModified());
+                }
+            }
+        }
+
+    }
+
+}
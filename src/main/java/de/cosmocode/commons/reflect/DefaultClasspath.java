@@ -21,6 +21,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -40,8 +41,15 @@ final class DefaultClasspath implements Classpath {
 
     private final Iterable<URL> entries;
 
+    private final ClasspathIndex index;
+
     public DefaultClasspath(String classpath) {
+        this(classpath, null);
+    }
+
+    public DefaultClasspath(String classpath, @Nullable ClasspathIndex index) {
         Preconditions.checkNotNull(classpath, "Classpath");
+        this.index = index;
         
         this.entries = ImmutableSet.copyOf(Iterables.transform(SPLITTER.split(classpath), new Function<String, URL>() {
             
@@ -72,7 +80,7 @@ final class DefaultClasspath implements Classpath {
     public Packages restrictTo(Iterable<String> packages) {
         Preconditions.checkNotNull(packages, "Packages");
         try {
-            return new DefaultPackages(this, packages);
+            return new DefaultPackages(this, packages, index);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
@@ -15,27 +15,82 @@
  */
 package de.cosmocode.commons.reflect;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSet.Builder;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.Iterator;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 /**
  * Default {@link Packages} implementation.
  *
+ * <p>
+ *   Classpath entries are scanned in parallel, results are merged in classpath order.
+ *   The classes of every entry are sorted by name, whether they were scanned or read from an index.
+ *   Jars are scanned using their central directory, so only class files in the requested
+ *   packages are decompressed. Directories are only visited below the requested packages.
+ * </p>
+ * <p>
+ *   Entries which contain a {@link ClassIndex}, generated at compile time by the
+ *   {@link ClassIndexProcessor}, are not scanned. Instead the classes are read from that index,
+ *   as long as it lists exactly the class files of the entry. Such an index leaves out anonymous
+ *   and local classes as well as package-info and module-info, so they are missing from the
+ *   classes read from it, whereas scanned entries contain every class file.
+ * </p>
+ * <p>
+ *   If a {@link ClasspathIndex} is given, unchanged entries are read from the index and
+ *   only new or modified entries are scanned, completely, in order to update the index.
+ * </p>
+ * <p>
+ *   Classes are not loaded while scanning. Instead the header of every class file is read
+ *   using {@link ClassFile}. The headers are indexed once by their direct super types and
+ *   annotations, so {@link #subclassesOf(Class)} and {@link #annotatedWith(Class)} only
+ *   follow the edges of the matching classes instead of testing all classes.
+ *   Only the classes which are returned by this packages are loaded, when they are iterated.
+ *   {@link #filter(Predicate)} and {@link #iterator()} load all classes, because arbitrary
+ *   predicates need loaded classes.
+ * </p>
+ *
  * @since 1.8
  * @author Willi Schoenborn
  */
@@ -43,84 +98,137 @@ final class DefaultPackages implements Packages {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultPackages.class);
 
-    private final ImmutableSet<Class<?>> classes;
-    
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final ImmutableMap<String, ClassFile> classes;
+
+    // the position of every class in scan order, used to return results in a stable order
+    private final ImmutableMap<String, Integer> ordinals;
+
+    // super class -> direct sub classes
+    private final ImmutableListMultimap<String, String> subclasses;
+
+    // interface -> classes and interfaces which directly implement or extend it
+    private final ImmutableListMultimap<String, String> implementors;
+
+    // annotation -> classes which are directly annotated with it
+    private final ImmutableListMultimap<String, String> annotated;
+
+    // super types which are not part of this packages
+    private final ImmutableSet<String> outsideTypes;
+
+    private final ImmutableSet<String> outsideSuperclasses;
+
+    private final ConcurrentMap<String, Optional<Class<?>>> outside = Maps.newConcurrentMap();
+
     public DefaultPackages(Classpath classpath, Iterable<String> packages) throws IOException {
+        this(classpath, packages, null);
+    }
+
+    public DefaultPackages(Classpath classpath, Iterable<String> packages, @Nullable ClasspathIndex index)
+        throws IOException {
         Preconditions.checkNotNull(classpath, "Classpath");
         Preconditions.checkNotNull(packages, "Packages");
-        final Builder<Class<?>> builder = ImmutableSet.builder();
-        
-        for (URL url : classpath) {
-            final File file = new File(url.getFile());
-            if (file.isFile()) {
-                loadJar(builder, file, packages);
-            } else if (file.isDirectory()) {
-                loadDirectory(builder, file, packages);
-            } else {
-                LOG.warn("Unable to load from classpath entry {}", url);
+        final ImmutableSet<String> names = ImmutableSet.copyOf(packages);
+        final List<URL> entries = ImmutableList.copyOf(classpath);
+        final int threads = Math.min(entries.size(), Runtime.getRuntime().availableProcessors());
+
+        if (threads <= 1) {
+            final Map<String, ClassFile> files = Maps.newLinkedHashMap();
+            for (URL url : entries) {
+                merge(files, new Scan(url, names, index).call());
+            }
+            this.classes = ImmutableMap.copyOf(files);
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                this.classes = scan(executor, entries, names, index);
+            } finally {
+                executor.shutdownNow();
             }
         }
-        
-        this.classes = builder.build();
-    }
 
-    private void loadDirectory(Builder<Class<?>> builder, File directory, Iterable<String> packages) {
-        loadDirectoryRecursively(builder, directory, directory, packages);
-    }
-    
-    private void loadDirectoryRecursively(Builder<Class<?>> builder, File root, File directory, 
-        Iterable<String> packages) {
-        LOG.trace("Loading from directory {}", directory);
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                loadDirectoryRecursively(builder, root, file, packages);
-            } else {
-                loadClass(builder, file.getAbsolutePath().replace(root.getAbsolutePath(), ""), packages);
+        final ImmutableMap.Builder<String, Integer> ordinalsBuilder = ImmutableMap.builder();
+        final ImmutableListMultimap.Builder<String, String> subclassesBuilder = ImmutableListMultimap.builder();
+        final ImmutableListMultimap.Builder<String, String> implementorsBuilder = ImmutableListMultimap.builder();
+        final ImmutableListMultimap.Builder<String, String> annotatedBuilder = ImmutableListMultimap.builder();
+        final ImmutableSet.Builder<String> outsideTypesBuilder = ImmutableSet.builder();
+        final ImmutableSet.Builder<String> outsideSuperclassesBuilder = ImmutableSet.builder();
+        int ordinal = 0;
+
+        for (Map.Entry<String, ClassFile> entry : classes.entrySet()) {
+            final String name = entry.getKey();
+            final ClassFile file = entry.getValue();
+            ordinalsBuilder.put(name, ordinal++);
+            final String superName = file.getSuperName();
+            if (superName != null) {
+                subclassesBuilder.put(superName, name);
+                if (!classes.containsKey(superName)) {
+                    outsideTypesBuilder.add(superName);
+                    outsideSuperclassesBuilder.add(superName);
+                }
+            }
+            for (String interfaceName : file.getInterfaceNames()) {
+                implementorsBuilder.put(interfaceName, name);
+                if (!classes.containsKey(interfaceName)) {
+                    outsideTypesBuilder.add(interfaceName);
+                }
+            }
+            for (String annotationName : file.getAnnotationNames()) {
+                annotatedBuilder.put(annotationName, name);
             }
         }
+
+        this.ordinals = ordinalsBuilder.build();
+        this.subclasses = subclassesBuilder.build();
+        this.implementors = implementorsBuilder.build();
+        this.annotated = annotatedBuilder.build();
+        this.outsideTypes = outsideTypesBuilder.build();
+        this.outsideSuperclasses = outsideSuperclassesBuilder.build();
     }
 
-    private void loadJar(Builder<Class<?>> builder, File file, Iterable<String> packages) throws IOException {
-        LOG.trace("Loading from jar {}", file);
-        final InputStream stream = Files.newInputStreamSupplier(file).getInput();
-        
+    /**
+     * Scans all classpath entries in parallel and merges the results in classpath order.
+     */
+    private static ImmutableMap<String, ClassFile> scan(ExecutorService executor, List<URL> entries,
+        Set<String> packages, @Nullable ClasspathIndex index) throws IOException {
+        final List<Future<Map<String, ClassFile>>> futures = Lists.newArrayListWithCapacity(entries.size());
+        boolean completed = false;
         try {
-            final JarInputStream jar = new JarInputStream(stream);
-            
-            try {
-                while (true) {
-                    final JarEntry entry = jar.getNextJarEntry();
-                    if (entry == null) return;
-                    loadClass(builder, entry.getName(), packages);
-                }
-            } finally {
-                jar.close();
+            for (URL url : entries) {
+                futures.add(executor.submit(new Scan(url, packages, index)));
             }
+            final Map<String, ClassFile> files = Maps.newLinkedHashMap();
+            for (Future<Map<String, ClassFile>> future : futures) {
+                merge(files, future.get());
+            }
+            completed = true;
+            return ImmutableMap.copyOf(files);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IllegalStateException(e.getCause());
         } finally {
-            stream.close();
+            if (!completed) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
         }
     }
-    
-    private void loadClass(Builder<Class<?>> builder, String name, Iterable<String> packages) {
-        if (!name.endsWith(".class")) return;
-        final String className = pathToName(name);
-        LOG.trace("Considering class {}", className);
-        if (containedIn(className, packages)) {
-            LOG.trace("Loading class {}", className);
-            try {
-                builder.add(Reflection.forName(className));
-            } catch (ClassNotFoundException e) {
-                throw new IllegalStateException(e);
+
+    private static void merge(Map<String, ClassFile> files, Map<String, ClassFile> scanned) {
+        for (Map.Entry<String, ClassFile> entry : scanned.entrySet()) {
+            // the first class on the classpath wins, like in a class loader
+            if (!files.containsKey(entry.getKey())) {
+                files.put(entry.getKey(), entry.getValue());
             }
         }
     }
-    
-    private String pathToName(String path) {
-        final String name = path.replace("/", ".").replace(".class", "");
-        return name.startsWith(".") ? name.substring(1) : name;
-    }
-    
-    private boolean containedIn(String className, Iterable<String> packages) {
+
+    private static boolean containedIn(String className, Iterable<String> packages) {
         for (String p : packages) {
             if (className.startsWith(p + ".")) return true;
         }
@@ -130,32 +238,408 @@ final class DefaultPackages implements Packages {
     @Override
     public <T> Iterable<Class<? extends T>> subclassesOf(Class<T> type) {
         Preconditions.checkNotNull(type, "Type");
-        final Iterable<Class<?>> filtered = Iterables.filter(this, Reflection.isSubtypeOf(type));
-        return Iterables.transform(filtered, Reflection.asSubclass(type));
+        final Set<String> roots = Sets.newHashSet();
+        roots.add(type.getName());
+        for (String name : outsideTypes) {
+            final Class<?> outside = loadOutside(name);
+            if (outside != null && type.isAssignableFrom(outside)) {
+                roots.add(name);
+            }
+        }
+        return Iterables.transform(load(closure(roots, true)), Reflection.asSubclass(type));
     }
 
     @Override
     public Iterable<Class<?>> annotatedWith(Class<? extends Annotation> annotation) {
         Preconditions.checkNotNull(annotation, "Annotation");
-        return Iterables.filter(this, Reflection.isAnnotationPresent(annotation));
+        final Set<String> roots = Sets.newHashSet(annotated.get(annotation.getName()));
+        if (!annotation.isAnnotationPresent(Inherited.class)) {
+            return load(sort(roots));
+        }
+        // inherited annotations are inherited from super classes, but not from interfaces
+        for (String name : outsideSuperclasses) {
+            final Class<?> outside = loadOutside(name);
+            if (outside != null && outside.isAnnotationPresent(annotation)) {
+                roots.add(name);
+            }
+        }
+        return load(closure(roots, false));
+    }
+
+    /**
+     * Collects all classes of this packages which are reachable from the given roots,
+     * using the sub class and optionally the implementation edges, in scan order.
+     */
+    private List<String> closure(Set<String> roots, boolean interfaces) {
+        final Set<String> visited = Sets.newHashSet(roots);
+        final LinkedList<String> queue = Lists.newLinkedList(roots);
+        while (!queue.isEmpty()) {
+            final String current = queue.removeFirst();
+            for (String child : subclasses.get(current)) {
+                if (visited.add(child)) queue.add(child);
+            }
+            if (!interfaces) continue;
+            for (String child : implementors.get(current)) {
+                if (visited.add(child)) queue.add(child);
+            }
+        }
+        return sort(visited);
+    }
+
+    /**
+     * Sorts the given names by scan order and drops all names which are not part of this packages.
+     */
+    private List<String> sort(Set<String> names) {
+        final List<String> sorted = Lists.newArrayListWithCapacity(names.size());
+        for (String name : names) {
+            if (ordinals.containsKey(name)) {
+                sorted.add(name);
+            }
+        }
+        Collections.sort(sorted, Ordering.natural().onResultOf(Functions.forMap(ordinals)));
+        return sorted;
     }
-    
+
     @Override
     public Iterable<Class<?>> filter(Predicate<? super Class<?>> predicate) {
         Preconditions.checkNotNull(predicate, "Predicate");
         return Iterables.filter(this, predicate);
     }
-    
+
     @Override
     public <T> Iterable<Class<? extends T>> filter(Class<T> type, Predicate<? super Class<? extends T>> predicate) {
         Preconditions.checkNotNull(type, "Type");
         Preconditions.checkNotNull(predicate, "Predicate");
         return Iterables.filter(subclassesOf(type), predicate);
     }
-    
+
     @Override
     public Iterator<Class<?>> iterator() {
-        return classes.iterator();
+        return Iterators.transform(classes.keySet().iterator(), LoadClass.INSTANCE);
+    }
+
+    private Iterable<Class<?>> load(List<String> names) {
+        return Iterables.transform(Collections.unmodifiableList(names), LoadClass.INSTANCE);
+    }
+
+    /**
+     * Loads a super type outside of this packages without initializing it.
+     *
+     * @return the loaded class or null if it can't be loaded
+     */
+    private Class<?> loadOutside(String name) {
+        final Optional<Class<?>> cached = outside.get(name);
+        if (cached != null) return cached.orNull();
+        Optional<Class<?>> loaded;
+        try {
+            loaded = Optional.<Class<?>>of(Class.forName(name, false, DefaultPackages.class.getClassLoader()));
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Unable to load super type {}", name);
+            loaded = Optional.absent();
+        } catch (LinkageError e) {
+            LOG.debug("Unable to link super type {}", name);
+            loaded = Optional.absent();
+        }
+        outside.putIfAbsent(name, loaded);
+        return loaded.orNull();
+    }
+
+    /**
+     * Scans a single classpath entry for class files in the given packages.
+     */
+    private static final class Scan implements Callable<Map<String, ClassFile>> {
+
+        private final URL url;
+
+        private final Set<String> packages;
+
+        private final ClasspathIndex index;
+
+        // sorted by name, like the classes read from an index
+        private final Map<String, ClassFile> files = Maps.newTreeMap();
+
+        public Scan(URL url, Set<String> packages, @Nullable ClasspathIndex index) {
+            this.url = url;
+            this.packages = packages;
+            this.index = index;
+        }
+
+        @Override
+        public Map<String, ClassFile> call() throws IOException {
+            final File file = new File(url.getFile());
+            if (!file.isFile() && !file.isDirectory()) {
+                LOG.warn("Unable to load from classpath entry {}", url);
+                return files;
+            }
+
+            final Map<String, ClassFile> compiled = compiled(file);
+            if (compiled != null) {
+                LOG.trace("Using compiled class index of {}", file);
+                return compiled;
+            } else if (index != null) {
+                return indexed(file);
+            } else if (file.isFile()) {
+                loadJar(file, packages);
+            } else {
+                for (String name : packages) {
+                    loadDirectory(new File(file, name.replace('.', File.separatorChar)), name);
+                }
+            }
+            return files;
+        }
+
+        /**
+         * Reads the classes of the requested packages from the {@link ClassIndex} which
+         * was generated at compile time, if the given entry contains one.
+         */
+        @Nullable
+        private Map<String, ClassFile> compiled(File file) throws IOException {
+            final Map<String, ClassFile> all;
+            final Set<String> names = Sets.newHashSet();
+            if (file.isDirectory()) {
+                final File indexFile = new File(file, ClassIndex.LOCATION.replace('/', File.separatorChar));
+                if (!indexFile.isFile()) return null;
+                final InputStream stream = new BufferedInputStream(Files.newInputStreamSupplier(indexFile).getInput());
+                try {
+                    all = readCompiled(file, stream);
+                } finally {
+                    stream.close();
+                }
+                if (all == null) return null;
+                // only the requested packages are compared, walking the whole entry would be too slow
+                for (String name : packages) {
+                    listDirectory(new File(file, name.replace('.', File.separatorChar)), name, names);
+                }
+            } else {
+                final ZipFile jar = openJar(file);
+                if (jar == null) return null;
+                try {
+                    final ZipEntry entry = jar.getEntry(ClassIndex.LOCATION);
+                    if (entry == null) return null;
+                    final InputStream stream = new BufferedInputStream(jar.getInputStream(entry));
+                    try {
+                        all = readCompiled(file, stream);
+                    } finally {
+                        stream.close();
+                    }
+                    if (all == null) return null;
+                    final Enumeration<? extends ZipEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        final String className = classNameOf(entries.nextElement().getName());
+                        if (className != null && ClassIndex.isIndexed(className)) names.add(className);
+                    }
+                } finally {
+                    jar.close();
+                }
+            }
+
+            final Map<String, ClassFile> matching = Maps.newTreeMap();
+            for (Map.Entry<String, ClassFile> entry : all.entrySet()) {
+                if (containedIn(entry.getKey(), packages)) {
+                    matching.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            // the index only contains the classes of a single compilation, e.g. incremental builds
+            final Set<String> expected = file.isDirectory() ? matching.keySet() : all.keySet();
+            if (!expected.equals(names)) {
+                LOG.info("Ignoring class index of {}, which doesn't match its class files", file);
+                return null;
+            }
+            return matching;
+        }
+
+        @Nullable
+        private Map<String, ClassFile> readCompiled(File file, InputStream stream) {
+            try {
+                return ClassIndex.read(stream);
+            } catch (IOException e) {
+                LOG.warn("Ignoring unreadable class index of " + file, e);
+                return null;
+            }
+        }
+
+        /**
+         * Collects the names of all classes below the given directory which belong into a
+         * {@link ClassIndex}, without reading them.
+         */
+        private void listDirectory(File directory, String packageName, Set<String> names) {
+            final File[] children = directory.listFiles();
+            if (children == null) return;
+            final String prefix = packageName.isEmpty() ? "" : packageName + ".";
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    listDirectory(child, prefix + child.getName(), names);
+                } else {
+                    final String className = classNameOf(child.getName());
+                    if (className != null && ClassIndex.isIndexed(prefix + className)) names.add(prefix + className);
+                }
+            }
+        }
+
+        /**
+         * Reads the given entry from the index or scans the whole entry and updates the index,
+         * so it can be used for all packages afterwards.
+         */
+        private Map<String, ClassFile> indexed(File file) throws IOException {
+            final ClasspathIndex.Fingerprint fingerprint = ClasspathIndex.Fingerprint.of(file);
+            final Map<String, ClassFile> cached = index.get(file, fingerprint, packages);
+            if (cached != null) {
+                LOG.trace("Using index of {}", file);
+                return cached;
+            }
+
+            if (file.isFile()) {
+                loadJar(file, null);
+            } else {
+                loadDirectory(file, "");
+            }
+
+            try {
+                index.put(file, fingerprint, files);
+            } catch (IOException e) {
+                LOG.warn("Unable to write index of " + file, e);
+            }
+
+            // sorted like the classes read from an index
+            final Map<String, ClassFile> matching = Maps.newTreeMap();
+            for (Map.Entry<String, ClassFile> entry : files.entrySet()) {
+                if (containedIn(entry.getKey(), packages)) {
+                    matching.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return matching;
+        }
+
+        /**
+         * Only visits the directories of the requested packages instead of the whole entry.
+         */
+        private void loadDirectory(File directory, String packageName) throws IOException {
+            final File[] children = directory.listFiles();
+            if (children == null) return;
+            LOG.trace("Loading from directory {}", directory);
+            final String prefix = packageName.isEmpty() ? "" : packageName + ".";
+            for (File child : children) {
+                final String name = child.getName();
+                if (child.isDirectory()) {
+                    loadDirectory(child, prefix + name);
+                    continue;
+                }
+                final String simpleName = classNameOf(name);
+                if (simpleName != null) {
+                    final String className = prefix + simpleName;
+                    if (files.containsKey(className)) continue;
+                    final InputStream stream = new BufferedInputStream(Files.newInputStreamSupplier(child).getInput());
+                    try {
+                        readClass(className, stream);
+                    } finally {
+                        stream.close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Uses the central directory of the jar, so only matching class files are decompressed.
+         * Reads all class files if packageNames is null.
+         */
+        private void loadJar(File file, @Nullable Set<String> packageNames) throws IOException {
+            LOG.trace("Loading from jar {}", file);
+            final List<String> prefixes;
+            if (packageNames == null) {
+                prefixes = ImmutableList.of("");
+            } else {
+                prefixes = Lists.newArrayListWithCapacity(packageNames.size());
+                for (String name : packageNames) {
+                    prefixes.add(name.replace('.', '/') + "/");
+                }
+            }
+
+            final ZipFile jar = openJar(file);
+            if (jar == null) return;
+            try {
+                final Enumeration<? extends ZipEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    final String path = entry.getName();
+                    if (!startsWithAny(path, prefixes)) continue;
+                    final String className = classNameOf(path);
+                    if (className == null || files.containsKey(className)) continue;
+                    final InputStream stream = new BufferedInputStream(jar.getInputStream(entry));
+                    try {
+                        readClass(className, stream);
+                    } finally {
+                        stream.close();
+                    }
+                }
+            } finally {
+                jar.close();
+            }
+        }
+
+        /**
+         * Opens the given file as a jar.
+         *
+         * @return the opened jar or null if the file is no zip file
+         */
+        @Nullable
+        private ZipFile openJar(File file) throws IOException {
+            try {
+                return new ZipFile(file);
+            } catch (ZipException e) {
+                LOG.warn("Ignoring classpath entry {}, which is no jar: {}", url, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Converts the path of a class file to the binary name of its class.
+         *
+         * @return the class name or null if path is no class file
+         */
+        @Nullable
+        private String classNameOf(String path) {
+            if (!path.endsWith(CLASS_SUFFIX)) return null;
+            return path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+        }
+
+        private boolean startsWithAny(String path, List<String> prefixes) {
+            for (String prefix : prefixes) {
+                if (path.startsWith(prefix)) return true;
+            }
+            return false;
+        }
+
+        private void readClass(String className, InputStream stream) throws IOException {
+            LOG.trace("Reading class {}", className);
+            try {
+                files.put(className, ClassFile.read(stream));
+            } catch (IOException e) {
+                // classes outside of the requested packages are only read to fill the index
+                if (containedIn(className, packages)) throw e;
+                LOG.debug("Skipping unreadable class file {}", className);
+            }
+        }
+
+    }
+
+    /**
+     * Loads classes by their name using {@link Reflection#forName(String)}.
+     */
+    private enum LoadClass implements Function<String, Class<?>> {
+
+        INSTANCE;
+
+        @Override
+        public Class<?> apply(String name) {
+            LOG.trace("Loading class {}", name);
+            try {
+                return Reflection.forName(name);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
     }
 
 }
@@ -16,6 +16,11 @@
 package de.cosmocode.commons.reflect;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import javax.annotation.Nullable;
@@ -30,9 +35,21 @@ enum GetAllInterfaces implements Function<Class<?>, Iterable<Class<?>>> {
 
     INSTANCE;
     
+    private final LoadingCache<Class<?>, ImmutableList<Class<?>>> cache = CacheBuilder.newBuilder().
+        weakKeys().softValues().build(new CacheLoader<Class<?>, ImmutableList<Class<?>>>() {
+            
+            @Override
+            public ImmutableList<Class<?>> load(Class<?> type) {
+                return ImmutableList.copyOf(Iterables.filter(GetAllSuperTypes.INSTANCE.of(type), 
+                    Reflection.isInterface()));
+            }
+            
+        });
+    
     @Override
     public Iterable<Class<?>> apply(@Nullable Class<?> from) {
-        return Iterables.filter(Reflection.getAllSuperTypes(from), Reflection.isInterface());
+        Preconditions.checkNotNull(from, "Type");
+        return cache.getUnchecked(from);
     }
     
 }
@@ -16,15 +16,25 @@
 package de.cosmocode.commons.reflect;
 
 import com.google.common.base.Function;
-import de.cosmocode.collections.tree.DefaultTree;
-import de.cosmocode.collections.tree.TraverseMode;
-import de.cosmocode.collections.tree.Tree;
-import de.cosmocode.collections.tree.TreeNode;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import javax.annotation.Nullable;
+import java.util.LinkedList;
+import java.util.Set;
 
 /**
- * Implementation of {@link Reflection#getAllInterfaces()}.
+ * Implementation of {@link Reflection#getAllSuperTypes()}.
+ * 
+ * <p>
+ *   The super types of every class are computed once and cached. Keys are weak and values
+ *   are soft, so cached classes don't prevent their class loader from being collected.
+ * </p>
  *
  * @since 1.11
  * @author Willi Schoenborn
@@ -33,11 +43,59 @@ public enum GetAllSuperTypes implements Function<Class<?>, Iterable<Class<?>>> {
 
     INSTANCE;
     
+    private final LoadingCache<Class<?>, ImmutableList<Class<?>>> cache = CacheBuilder.newBuilder().
+        weakKeys().softValues().build(new CacheLoader<Class<?>, ImmutableList<Class<?>>>() {
+            
+            @Override
+            public ImmutableList<Class<?>> load(Class<?> type) {
+                return compute(type);
+            }
+            
+        });
+    
     @Override
     public Iterable<Class<?>> apply(@Nullable Class<?> type) {
-        final TreeNode<Class<?>> root = new HierarchyTreeNode(type);
-        final Tree<Class<?>> tree = new DefaultTree<Class<?>>(root);
-        return tree.traverse(TraverseMode.LEVEL_ORDER);
+        return of(type);
+    }
+    
+    /**
+     * Returns the cached super types of the given type.
+     * 
+     * @param type the type being inspected
+     * @return all super types including type, in level order and without duplicates
+     * @throws NullPointerException if type is null
+     */
+    ImmutableList<Class<?>> of(Class<?> type) {
+        Preconditions.checkNotNull(type, "Type");
+        return cache.getUnchecked(type);
+    }
+    
+    /**
+     * Traverses the hierarchy of the given type in level order and visits
+     * every type only once, even if it can be reached by several paths.
+     */
+    private static ImmutableList<Class<?>> compute(Class<?> type) {
+        final ImmutableList.Builder<Class<?>> builder = ImmutableList.builder();
+        final Set<Class<?>> visited = Sets.newHashSet();
+        final LinkedList<Class<?>> queue = Lists.newLinkedList();
+        visited.add(type);
+        queue.add(type);
+        
+        while (!queue.isEmpty()) {
+            final Class<?> current = queue.removeFirst();
+            builder.add(current);
+            final Class<?> superClass = current.getSuperclass();
+            if (superClass != null && visited.add(superClass)) {
+                queue.add(superClass);
+            }
+            for (Class<?> iface : current.getInterfaces()) {
+                if (visited.add(iface)) {
+                    queue.add(iface);
+                }
+            }
+        }
+        
+        return builder.build();
     }
 
 }
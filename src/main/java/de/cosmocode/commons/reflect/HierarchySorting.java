@@ -0,0 +1,126 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Implementation for {@link Reflection#sortByHierarchy(Iterable, Comparator)}.
+ *
+ * <p>
+ *   Classes are sorted topologically using Kahn's algorithm on the graph
+ *   of all classes and their cached super types which are part of the input.
+ *   Of all classes whose sub types have already been emitted, the smallest
+ *   according to the tie-break comparator is emitted next, classes which are equal
+ *   according to the comparator are emitted in input order.
+ * </p>
+ *
+ * @since 1.21
+ */
+final class HierarchySorting {
+
+    private HierarchySorting() {
+
+    }
+
+    /**
+     * Sorts the given classes, sub types before their super types.
+     *
+     * @param classes the classes to sort, duplicates are ignored
+     * @param comparator the comparator used to order unrelated classes, ties keep their input order
+     * @return a new sorted list
+     * @throws NullPointerException if classes, comparator or any element is null
+     */
+    public static ImmutableList<Class<?>> sort(Iterable<? extends Class<?>> classes,
+        final Comparator<? super Class<?>> comparator) {
+        Preconditions.checkNotNull(classes, "Classes");
+        Preconditions.checkNotNull(comparator, "Comparator");
+
+        final Set<Class<?>> types = Sets.newLinkedHashSet();
+        for (Class<?> type : classes) {
+            types.add(Preconditions.checkNotNull(type, "Type"));
+        }
+
+        // edges point from every class to its super types in the input
+        final Map<Class<?>, List<Class<?>>> supertypes = Maps.newHashMapWithExpectedSize(types.size());
+        final Map<Class<?>, Integer> subtypes = Maps.newHashMapWithExpectedSize(types.size());
+        for (Class<?> type : types) {
+            subtypes.put(type, 0);
+        }
+        for (Class<?> type : types) {
+            final List<Class<?>> edges = Lists.newArrayList();
+            for (Class<?> supertype : GetAllSuperTypes.INSTANCE.of(type)) {
+                if (supertype == type || !types.contains(supertype)) continue;
+                edges.add(supertype);
+                subtypes.put(supertype, subtypes.get(supertype) + 1);
+            }
+            // interfaces have no super class, but are assignable to Object anyway
+            if (type.isInterface() && types.contains(Object.class)) {
+                edges.add(Object.class);
+                subtypes.put(Object.class, subtypes.get(Object.class) + 1);
+            }
+            supertypes.put(type, edges);
+        }
+
+        // classes the comparator considers equal keep their input order
+        final Map<Class<?>, Integer> positions = Maps.newHashMapWithExpectedSize(types.size());
+        for (Class<?> type : types) {
+            positions.put(type, positions.size());
+        }
+        final Comparator<Class<?>> stable = new Comparator<Class<?>>() {
+
+            @Override
+            public int compare(Class<?> left, Class<?> right) {
+                final int result = comparator.compare(left, right);
+                return result == 0 ? positions.get(left).compareTo(positions.get(right)) : result;
+            }
+
+        };
+
+        final Queue<Class<?>> ready = new PriorityQueue<Class<?>>(Math.max(1, types.size()), stable);
+        for (Class<?> type : types) {
+            if (subtypes.get(type) == 0) {
+                ready.add(type);
+            }
+        }
+
+        final ImmutableList.Builder<Class<?>> sorted = ImmutableList.builder();
+        while (!ready.isEmpty()) {
+            final Class<?> type = ready.remove();
+            sorted.add(type);
+            for (Class<?> supertype : supertypes.get(type)) {
+                final int remaining = subtypes.get(supertype) - 1;
+                subtypes.put(supertype, remaining);
+                if (remaining == 0) {
+                    ready.add(supertype);
+                }
+            }
+        }
+        return sorted.build();
+    }
+
+}
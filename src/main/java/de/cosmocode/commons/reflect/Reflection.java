@@ -17,17 +17,19 @@ package de.cosmocode.commons.reflect;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ComputationException;
-import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import de.cosmocode.commons.Strings;
 import de.cosmocode.commons.validation.Rule;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.concurrent.ConcurrentMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Static utility class for {@link Class}es, {@link Classpath}s and {@link Packages}.
@@ -37,9 +39,6 @@ import java.util.concurrent.ConcurrentMap;
  */
 public final class Reflection {
 
-    private static final ConcurrentMap<String, Class<?>> CACHE = new MapMaker().
-        softValues().makeComputingMap(Reflection.forName());
-    
     private static final Ordering<Class<?>> ORDER_BY_NAME = Ordering.natural().onResultOf(Reflection.getName());
     
     private static final Ordering<Class<?>> ORDER_BY_HIERARCHY = Reflection.orderByHierarchy(Reflection.orderByName());
@@ -51,6 +50,12 @@ public final class Reflection {
     /**
      * Returns the Class object associated with the class or interface with the given string name.
      * This method does, in contrast to {@link Class#forName(String)}, cache the results.
+     * Classes are loaded by the class loader of this library.
+     * 
+     * <p>
+     *   Names which can't be resolved are cached as well, so repeated lookups
+     *   of missing classes are cheap.
+     * </p>
      * 
      * @since 1.6
      * @param name the class name
@@ -58,11 +63,61 @@ public final class Reflection {
      * @throws ClassNotFoundException if the class does not exist
      */
     public static Class<?> forName(String name) throws ClassNotFoundException {
-        try {
-            return CACHE.get(name);
-        } catch (ComputationException e) {
-            throw new ClassNotFoundException(e.getMessage(), e);
+        return forName(name, Reflection.class.getClassLoader());
+    }
+
+    /**
+     * Returns the Class object associated with the class or interface with the given string name,
+     * loaded and initialized by the given class loader. Results, including failed lookups,
+     * are cached per class loader. Class loaders are referenced weakly.
+     * 
+     * @since 1.21
+     * @param name the class name
+     * @param loader the class loader, null for the bootstrap class loader
+     * @return the loaded class
+     * @throws NullPointerException if name is null
+     * @throws ClassNotFoundException if the class does not exist
+     */
+    public static Class<?> forName(String name, @Nullable ClassLoader loader) throws ClassNotFoundException {
+        return ClassResolver.of(loader).resolve(name, loader);
+    }
+
+    /**
+     * Resolves all classes with the given names using the class loader of this library.
+     * 
+     * @since 1.21
+     * @param names the class names
+     * @return a map of all resolvable names to their classes, in the order of names,
+     *         names which can't be resolved are omitted
+     * @throws NullPointerException if names is null or contains null
+     */
+    public static Map<String, Class<?>> forNames(Iterable<String> names) {
+        return forNames(names, Reflection.class.getClassLoader());
+    }
+
+    /**
+     * Resolves all classes with the given names using the given class loader.
+     * Results, including failed lookups, are cached like in {@link #forName(String, ClassLoader)}.
+     * 
+     * @since 1.21
+     * @param names the class names
+     * @param loader the class loader, null for the bootstrap class loader
+     * @return a map of all resolvable names to their classes, in the order of names,
+     *         names which can't be resolved are omitted
+     * @throws NullPointerException if names is null or contains null
+     */
+    public static Map<String, Class<?>> forNames(Iterable<String> names, @Nullable ClassLoader loader) {
+        Preconditions.checkNotNull(names, "Names");
+        final ClassResolver resolver = ClassResolver.of(loader);
+        final Map<String, Class<?>> classes = Maps.newLinkedHashMap();
+        for (String name : names) {
+            try {
+                classes.put(name, resolver.resolve(name, loader));
+            } catch (ClassNotFoundException e) {
+                // missing classes are omitted
+            }
         }
+        return Collections.unmodifiableMap(classes);
     }
     
     /**
@@ -128,8 +183,8 @@ public final class Reflection {
      * input implements either explicitly or implicitly.
      * 
      * <p>
-     *   Note: The iterable provided by the returned function may return
-     *   the same interface twice.
+     *   The iterables provided by the returned function are immutable lists
+     *   without duplicates, which are computed once per class and cached.
      * </p>
      * 
      * @since 1.11
@@ -144,7 +199,7 @@ public final class Reflection {
      * input implements either explicitly or implicitly.
      * 
      * <p>
-     *   Note: The returned iterable may return the same interface twice.
+     *   The returned iterable is a cached immutable list without duplicates.
      * </p>
      * 
      * @since 1.11
@@ -163,8 +218,9 @@ public final class Reflection {
      * order. Super classes are returned before interfaces.
      * 
      * <p>
-     *   Note: The iterable provided by the returned function may return
-     *   the same type multiple times.
+     *   The iterables provided by the returned function are immutable lists
+     *   starting with the input itself. Types which can be reached by several
+     *   paths are only returned once. Lists are computed once per class and cached.
      * </p>
      * 
      * @since 1.12
@@ -180,7 +236,8 @@ public final class Reflection {
      * order. Super classes are returned before interfaces.
      * 
      * <p>
-     *   Note: The returned iterable may return the same type twice.
+     *   The returned iterable is a cached immutable list without duplicates,
+     *   starting with type itself.
      * </p>
      * 
      * @since 1.12
@@ -192,6 +249,43 @@ public final class Reflection {
         Preconditions.checkNotNull(type, "Type");
         return getAllSuperTypes().apply(type);
     }
+
+    /**
+     * Returns the {@link Accessor}s of all bean properties and public instance fields
+     * of the given type. Every {@link Accessor} is a {@link Function} reading its property.
+     * 
+     * <p>
+     *   Accessors are discovered once per class and cached. The underlying methods
+     *   and fields are made accessible once, so using them is considerably cheaper
+     *   than looking them up on every call.
+     * </p>
+     * 
+     * @since 1.21
+     * @param <T> the generic type of the inspected class
+     * @param type the type being inspected
+     * @return all accessors of the given type
+     * @throws NullPointerException if type is null
+     */
+    public static <T> Accessors<T> accessors(Class<T> type) {
+        return Accessors.of(type);
+    }
+
+    /**
+     * Drops the cached {@link Accessors} of all classes defined by the given class loader.
+     * 
+     * <p>
+     *   Cached accessors reference their classes and therefore the class loader which
+     *   defined them. Applications which discard class loaders, e.g. when redeploying,
+     *   should release them here, otherwise they are only collected under memory pressure.
+     * </p>
+     * 
+     * @since 1.21
+     * @param loader the class loader which is no longer used
+     * @throws NullPointerException if loader is null
+     */
+    public static void releaseAccessors(ClassLoader loader) {
+        Accessors.release(loader);
+    }
     
     /**
      * Returns a function which casts class literals into subclass literals
@@ -324,6 +418,11 @@ public final class Reflection {
      * {@link Number}. Two classes that are not related regarding inheritence are compared using
      * {@link Reflection#orderByName()}.
      * 
+     * <p>
+     *   Note: The returned ordering is not transitive for mixes of related and unrelated
+     *   classes. Use {@link Reflection#sortByHierarchy(Iterable)} to sort such collections.
+     * </p>
+     * 
      * @since 1.9
      * @return an ordering which sorts classes by hierarchy
      */
@@ -347,6 +446,46 @@ public final class Reflection {
     public static Ordering<Class<?>> orderByHierarchy(Comparator<Class<?>> comparator) {
         return new HierarchyOrdering(comparator);
     }
+
+    /**
+     * Sorts the given classes by their hierarchy. Sub types are placed before their super types,
+     * unrelated classes are ordered using {@link Reflection#orderByName()}.
+     * 
+     * <p>
+     *   In contrast to {@link Reflection#orderByHierarchy()} the result is consistent
+     *   for any mix of related and unrelated classes, because the hierarchy of all classes
+     *   is inspected once and sorted topologically, instead of comparing pairs of classes.
+     * </p>
+     * 
+     * @since 1.21
+     * @param classes the classes to sort, duplicates are ignored
+     * @return a new immutable list of all classes sorted by hierarchy
+     * @throws NullPointerException if classes is null or contains null
+     */
+    public static List<Class<?>> sortByHierarchy(Iterable<? extends Class<?>> classes) {
+        return sortByHierarchy(classes, Reflection.orderByName());
+    }
+    
+    /**
+     * Sorts the given classes by their hierarchy. Sub types are placed before their super types,
+     * unrelated classes are ordered using the given comparator.
+     * 
+     * <p>
+     *   In contrast to {@link Reflection#orderByHierarchy(Comparator)} the result is consistent
+     *   for any mix of related and unrelated classes, because the hierarchy of all classes
+     *   is inspected once and sorted topologically, instead of comparing pairs of classes.
+     * </p>
+     * 
+     * @since 1.21
+     * @param classes the classes to sort, duplicates are ignored
+     * @param comparator the comparator which is used in case of a tie
+     * @return a new immutable list of all classes sorted by hierarchy
+     * @throws NullPointerException if classes or comparator is null or classes contains null
+     */
+    public static List<Class<?>> sortByHierarchy(Iterable<? extends Class<?>> classes,
+        Comparator<? super Class<?>> comparator) {
+        return HierarchySorting.sort(classes, comparator);
+    }
     
     /**
      * Creates a new {@link Classpath} using the classpath property
@@ -373,4 +512,35 @@ public final class Reflection {
         return new DefaultClasspath(classpath);
     }
 
+    /**
+     * Creates a new {@link Classpath} using the classpath property of this virtual machine,
+     * which caches the scanned classes of every classpath entry in the given directory.
+     * Later scans only rescan new or modified entries, even in other processes.
+     * 
+     * @since 1.21
+     * @param indexDirectory the directory which stores the index, will be created if necessary
+     * @return a {@link Classpath} backed by the classpath of this virtual machine
+     * @throws NullPointerException if indexDirectory is null
+     */
+    public static Classpath defaultClasspath(File indexDirectory) {
+        final String classpath = System.getProperty("java.class.path");
+        return Reflection.classpathOf(Strings.defaultIfBlank(classpath, ""), indexDirectory);
+    }
+
+    /**
+     * Creates a {@link Classpath} using the specified classpath value, which caches
+     * the scanned classes of every classpath entry in the given directory.
+     * Later scans only rescan new or modified entries, even in other processes.
+     * 
+     * @since 1.21
+     * @param classpath the backing classpath value ({@link File#pathSeparator} separated)
+     * @param indexDirectory the directory which stores the index, will be created if necessary
+     * @return a {@link Classpath} backed by the specified classpath
+     * @throws NullPointerException if classpath or indexDirectory is null
+     */
+    public static Classpath classpathOf(String classpath, File indexDirectory) {
+        Preconditions.checkNotNull(classpath, "Classpath");
+        return new DefaultClasspath(classpath, new ClasspathIndex(indexDirectory));
+    }
+
 }
@@ -15,12 +15,22 @@
  */
 package de.cosmocode.collections;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapDifference;
+import com.google.common.io.Files;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests {@link MultiProperties} with two files.
@@ -45,4 +55,87 @@ public final class MultiPropertiesTest {
         Assert.assertEquals("v3", properties.getProperty("k3"));
     }
     
+    /**
+     * Tests {@link MultiProperties#watch(ExecutorService, File...)} and {@link PropertiesWatcher#refresh()}.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void watch() throws IOException {
+        final File a = File.createTempFile("first", ".properties");
+        final File b = File.createTempFile("second", ".properties");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Files.write("k1=v1\nk2=v2\n", a, Charsets.UTF_8);
+            Files.write("k2=somethingelse\n", b, Charsets.UTF_8);
+            final PropertiesWatcher watcher = MultiProperties.watch(executor, a, b);
+            Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "somethingelse"), watcher.getSnapshot());
+
+            final List<MapDifference<String, String>> differences = Lists.newArrayList();
+            watcher.addListener(new Procedure<MapDifference<String, String>>() {
+
+                @Override
+                public void apply(MapDifference<String, String> input) {
+                    differences.add(input);
+                }
+
+            });
+            Assert.assertFalse(watcher.refresh());
+
+            final long modified = a.lastModified();
+            Files.write("k1=changed\nk2=v2\nk3=v3\n", a, Charsets.UTF_8);
+            Assert.assertTrue(a.setLastModified(modified + 2000));
+            Assert.assertTrue(watcher.refresh());
+            Assert.assertEquals(ImmutableMap.of("k1", "changed", "k2", "somethingelse", "k3", "v3"), 
+                watcher.getSnapshot());
+            Assert.assertEquals(1, differences.size());
+            Assert.assertEquals(ImmutableMap.of("k3", "v3"), differences.get(0).entriesOnlyOnRight());
+            Assert.assertEquals(ImmutableSet.of("k1"), differences.get(0).entriesDiffering().keySet());
+            Assert.assertFalse(watcher.refresh());
+        } finally {
+            executor.shutdown();
+            Assert.assertTrue(a.delete());
+            Assert.assertTrue(b.delete());
+        }
+    }
+
+    /**
+     * Tests {@link MultiProperties#layered()}.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void layered() throws IOException {
+        final LayeredProperties properties = MultiProperties.layered();
+        properties.setLayer("a", MultiProperties.load(new File("src/test/resources/a.properties")));
+        properties.setLayer("b", MultiProperties.load(new File("src/test/resources/b.properties")));
+        properties.setLayer("overrides", ImmutableMap.of("k3", "overridden"));
+        
+        Assert.assertEquals("v1", properties.get("k1"));
+        Assert.assertEquals("somethingelse", properties.getString("k2"));
+        Assert.assertEquals("overridden", properties.get("k3"));
+        Assert.assertEquals(ImmutableList.of("a", "b", "overrides"), properties.getLayerNames());
+        
+        // replacing a layer keeps its position
+        properties.setLayer("b", ImmutableMap.of("k4", "v4"));
+        Assert.assertEquals("v2", properties.get("k2"));
+        Assert.assertEquals("v4", properties.get("k4"));
+        Assert.assertEquals(ImmutableList.of("a", "b", "overrides"), properties.getLayerNames());
+        Assert.assertEquals(ImmutableMap.of("k4", "v4"), properties.getLayer("b"));
+        
+        Assert.assertTrue(properties.removeLayer("overrides"));
+        Assert.assertFalse(properties.removeLayer("overrides"));
+        // k3 was only part of the replaced and the removed layer
+        Assert.assertFalse(properties.containsKey("k3"));
+        Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2", "k4", "v4"), properties);
+    }
+
+    /**
+     * Tests that {@link LayeredProperties} can't be modified directly.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void layeredPut() {
+        MultiProperties.layered().put("key", "value");
+    }
+
 }
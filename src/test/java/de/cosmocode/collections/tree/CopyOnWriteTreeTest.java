@@ -0,0 +1,173 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link CopyOnWriteTree}.
+ */
+public class CopyOnWriteTreeTest {
+
+    /**
+     * Tests that snapshots are not affected by later changes.
+     */
+    @Test
+    public void snapshot() {
+        final CopyOnWriteTree<String> tree = CopyOnWriteTree.of("root");
+        tree.addChildren("a", "b");
+        final PersistentTree<String> before = tree.snapshot();
+        tree.removeChildAt(0);
+        tree.addChild("c");
+
+        Assert.assertEquals(ImmutableList.of("root", "a", "b"),
+            ImmutableList.copyOf(before.traverse(TraverseMode.PRE_ORDER)));
+        Assert.assertEquals(ImmutableList.of("root", "b", "c"),
+            ImmutableList.copyOf(tree.traverse(TraverseMode.PRE_ORDER)));
+    }
+
+    /**
+     * Tests {@link CopyOnWriteTree#update(Function)}.
+     */
+    @Test
+    public void update() {
+        final CopyOnWriteTree<String> tree = CopyOnWriteTree.of("root");
+        final PersistentTree<String> result = tree.update(new Function<PersistentTree<String>, PersistentTree<String>>() {
+
+            @Override
+            public PersistentTree<String> apply(PersistentTree<String> input) {
+                final PersistentTree<String> next = input.addChild(input.getRoot(), "a");
+                return next.addChild(next.getRoot().getChildAt(0), "a-1");
+            }
+
+        });
+        Assert.assertSame(result, tree.snapshot());
+        Assert.assertEquals("a-1", tree.getChildAt(0).getChildAt(0).getData());
+    }
+
+    /**
+     * Tests that a failing {@link CopyOnWriteTree#update(Function)} publishes nothing.
+     */
+    @Test
+    public void updateFails() {
+        final CopyOnWriteTree<String> tree = CopyOnWriteTree.of("root");
+        final PersistentTree<String> before = tree.snapshot();
+        try {
+            tree.update(new Function<PersistentTree<String>, PersistentTree<String>>() {
+
+                @Override
+                public PersistentTree<String> apply(PersistentTree<String> input) {
+                    input.addChild(input.getRoot(), "a");
+                    throw new IllegalStateException();
+                }
+
+            });
+            Assert.fail("update should have failed");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(before, tree.snapshot());
+        }
+    }
+
+    /**
+     * Tests {@link CopyOnWriteTree#removeChildNode(TreeNode)} with a node of an old snapshot.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void removeOutdatedNode() {
+        final CopyOnWriteTree<String> tree = CopyOnWriteTree.of("root");
+        final TreeNode<String> a = tree.addChild("a");
+        tree.addChild("b");
+        tree.removeChildNode(a);
+    }
+
+    /**
+     * Tests {@link CopyOnWriteTree#setChildren(java.util.Collection)}.
+     */
+    @Test
+    public void setChildren() {
+        final CopyOnWriteTree<String> tree = CopyOnWriteTree.of("root");
+        tree.addChild("a");
+        final TreeNode<String> b = new DuplicatesNode<String>("b");
+        b.addChild("b-1");
+        tree.setChildren(ImmutableList.of(b));
+        Assert.assertEquals(ImmutableList.of("root", "b", "b-1"),
+            ImmutableList.copyOf(tree.traverse(TraverseMode.PRE_ORDER)));
+    }
+
+    /**
+     * Tests that readers always see complete batches while a writer publishes new snapshots.
+     *
+     * @throws Exception if a reader fails
+     */
+    @Test
+    public void concurrentReaders() throws Exception {
+        final CopyOnWriteTree<Integer> tree = CopyOnWriteTree.of(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<Integer>> readers = Lists.newArrayList();
+        try {
+            for (int i = 0; i < 4; i++) {
+                readers.add(executor.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() {
+                        int reads = 0;
+                        while (tree.snapshot().getRoot().getData() < 200) {
+                            final PersistentTree<Integer> snapshot = tree.snapshot();
+                            // every batch adds two children at once
+                            Assert.assertEquals(0, snapshot.getRoot().getNumberOfChildren() % 2);
+                            Assert.assertEquals(snapshot.getRoot().getNumberOfChildren() + 1, snapshot.size());
+                            reads++;
+                        }
+                        return reads;
+                    }
+
+                }));
+            }
+
+            for (int i = 1; i <= 200; i++) {
+                final int version = i;
+                tree.update(new Function<PersistentTree<Integer>, PersistentTree<Integer>>() {
+
+                    @Override
+                    public PersistentTree<Integer> apply(PersistentTree<Integer> input) {
+                        PersistentTree<Integer> next = input.addChild(input.getRoot(), version);
+                        next = next.addChild(next.getRoot(), -version);
+                        return next.setData(next.getRoot(), version);
+                    }
+
+                });
+            }
+
+            for (Future<Integer> reader : readers) {
+                reader.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(400, tree.getNumberOfChildren());
+    }
+
+}
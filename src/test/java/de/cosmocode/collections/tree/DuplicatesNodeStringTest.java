@@ -30,6 +30,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -115,4 +116,37 @@ public class DuplicatesNodeStringTest extends TreeNodeTest<String> {
         Assert.assertEquals(root, fromSerialized);
     }
 
+    /**
+     * Tests that the cached result of {@link DuplicatesNode#getChildren()} is not
+     * affected by later modifications and replaced by the next call.
+     */
+    @Test
+    public void testChildrenSnapshot() {
+        final DuplicatesNode<String> root = new DuplicatesNode<String>("root");
+        final TreeNode<String> first = root.addChild("first");
+        final List<TreeNode<String>> initial = root.getChildren();
+        Assert.assertSame(initial, root.getChildren());
+
+        final TreeNode<String> second = root.addChild("second");
+        Assert.assertEquals(ImmutableList.of(first), initial);
+        final List<TreeNode<String>> added = root.getChildren();
+        Assert.assertEquals(ImmutableList.of(first, second), added);
+
+        final TreeNode<String> inserted = new DuplicatesNode<String>("inserted");
+        root.insertChildAt(0, inserted);
+        Assert.assertEquals(ImmutableList.of(first, second), added);
+        final List<TreeNode<String>> afterInsert = root.getChildren();
+        Assert.assertEquals(ImmutableList.of(inserted, first, second), afterInsert);
+
+        root.removeChildNode(first);
+        Assert.assertEquals(ImmutableList.of(inserted, first, second), afterInsert);
+        final List<TreeNode<String>> afterRemove = root.getChildren();
+        Assert.assertEquals(ImmutableList.of(inserted, second), afterRemove);
+
+        final TreeNode<String> replacement = new DuplicatesNode<String>("replacement");
+        root.setChildren(ImmutableList.of(replacement));
+        Assert.assertEquals(ImmutableList.of(inserted, second), afterRemove);
+        Assert.assertEquals(ImmutableList.of(replacement), root.getChildren());
+    }
+
 }
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests {@link FlatTreeBuilder}.
+ */
+public class FlatTreeBuilderTest {
+
+    private static final FlatTreeBuilder<String[], String, String> BUILDER = FlatTreeBuilder.of(
+        column(0), column(1), column(2));
+
+    private static Function<String[], String> column(final int index) {
+        return new Function<String[], String>() {
+
+            @Override
+            public String apply(String[] from) {
+                return from[index];
+            }
+
+        };
+    }
+
+    private static String[] row(String id, String parentId, String data) {
+        return new String[] {id, parentId, data};
+    }
+
+    /**
+     * Tests {@link FlatTreeBuilder#build(Object, Iterable)} with valid rows in arbitrary order.
+     */
+    @Test
+    public void build() {
+        final List<String[]> rows = ImmutableList.of(
+            row("3", "1", "a-1"),
+            row("1", null, "a"),
+            row("4", "1", "a-2"),
+            row("2", null, "b"),
+            row("5", "3", "a-1-1"));
+        final FlatTreeBuilder.Result<String[], String> result = BUILDER.build("root", rows);
+
+        Assert.assertTrue(result.isComplete());
+        final TreeNode<String> expected = new DuplicatesNode<String>("root");
+        final TreeNode<String> a = expected.addChild("a");
+        a.addChild("a-1").addChild("a-1-1");
+        a.addChild("a-2");
+        expected.addChild("b");
+        Assert.assertEquals(expected, result.getRoot());
+
+        final TreeNode<String> a1 = result.getRoot().getChildAt(0).getChildAt(0);
+        Assert.assertEquals("a", a1.getParent().getData());
+        Assert.assertEquals("root", a1.getRoot().getData());
+    }
+
+    /**
+     * Tests {@link FlatTreeBuilder#build(Object, Iterable)} with orphans, cycles and duplicates.
+     */
+    @Test
+    public void invalidRows() {
+        final String[] orphan = row("2", "unknown", "orphan");
+        final String[] cycle1 = row("3", "4", "cycle-1");
+        final String[] cycle2 = row("4", "3", "cycle-2");
+        final String[] belowCycle = row("5", "4", "below-cycle");
+        final String[] duplicate = row("1", null, "duplicate");
+        final List<String[]> rows = ImmutableList.of(
+            row("1", null, "a"), orphan, belowCycle, cycle1, cycle2, duplicate, row("6", "1", "a-1"));
+        final FlatTreeBuilder.Result<String[], String> result = BUILDER.build("root", rows);
+
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(ImmutableList.of(orphan), result.getOrphans());
+        Assert.assertEquals(ImmutableSet.of(cycle1, cycle2), ImmutableSet.copyOf(result.getCycles()));
+        Assert.assertEquals(ImmutableList.of(duplicate), result.getDuplicates());
+        Assert.assertEquals(1, result.getRoot().getNumberOfChildren());
+        Assert.assertEquals("a-1", result.getRoot().getChildAt(0).getChildAt(0).getData());
+    }
+
+    /**
+     * Tests {@link FlatTreeBuilder#build(Object, Iterable)} with a degenerated tree.
+     */
+    @Test
+    public void deep() {
+        final ImmutableList.Builder<String[]> rows = ImmutableList.builder();
+        rows.add(row("0", null, "0"));
+        for (int i = 1; i < 100000; i++) {
+            rows.add(row(Integer.toString(i), Integer.toString(i - 1), Integer.toString(i)));
+        }
+        final FlatTreeBuilder.Result<String[], String> result = BUILDER.build("root", rows.build());
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(Integer.valueOf(100001), Trees.fold(result.getRoot(), new Function<String, Integer>() {
+
+            @Override
+            public Integer apply(String from) {
+                return 1;
+            }
+
+        }, new Combiner<String, Integer>() {
+
+            @Override
+            public Integer combine(String data, List<Integer> children) {
+                return children.get(0) + 1;
+            }
+
+        }));
+    }
+
+}
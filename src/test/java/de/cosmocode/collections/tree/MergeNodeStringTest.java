@@ -15,12 +15,17 @@
  */
 package de.cosmocode.collections.tree;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import junit.framework.Assert;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests MergeDuplicatesNode&lt;String&gt;.
@@ -207,5 +212,56 @@ public class MergeNodeStringTest extends TreeNodeTest<String> {
         System.out.println(actual.toString());
         Assert.assertEquals(expected, actual);
     }
+    
+    /**
+     * Tests {@link MergeNode#mergeAll(Iterable)} with 2 three level-deep trees.
+     */
+    @Test
+    public void testMergeAll() {
+        final TreeNode<String> first = emptyNode();
+        for (final TreeNode<String> child : createRealWorldChildren()) {
+            first.addChildNode(child);
+        }
+        final TreeNode<String> second = emptyNode();
+        for (final TreeNode<String> child : createRealWorldChildren2()) {
+            second.addChildNode(child);
+        }
+        
+        final TreeNode<String> actual = MergeNode.mergeAll(ImmutableList.of(first, second));
+        Assert.assertEquals(mergedRealWorld(), actual);
+        Assert.assertEquals(createRealWorldChildren().size(), first.getNumberOfChildren());
+    }
+    
+    /**
+     * Tests {@link MergeNode#mergeAll(Iterable, ExecutorService)} against {@link MergeNode#mergeAll(Iterable)}.
+     */
+    @Test
+    public void testMergeAllParallel() {
+        final List<TreeNode<String>> trees = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            final TreeNode<String> tree = emptyNode();
+            for (int j = 0; j < 20; j++) {
+                tree.addChild("child-" + (i + j) % 25).addChild("grandchild-" + j % 3).addChild("leaf-" + i);
+            }
+            trees.add(tree);
+        }
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final TreeNode<String> expected = MergeNode.mergeAll(trees);
+            Assert.assertEquals(24, expected.getNumberOfChildren());
+            Assert.assertEquals(expected, MergeNode.mergeAll(trees, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Tests {@link MergeNode#mergeAll(Iterable)} with no nodes.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeAllEmpty() {
+        MergeNode.mergeAll(ImmutableList.<TreeNode<String>>of());
+    }
 
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.collect.ImmutableList;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests {@link PathIndex}.
+ */
+public class PathIndexTest {
+
+    private PathIndex<String> createIndex() {
+        final Tree<String> tree = new DefaultTree<String>(new DuplicatesNode<String>("root"));
+        final TreeNode<String> electronics = tree.addChild("electronics");
+        electronics.addChild("phones").addChild("smart");
+        electronics.addChild("tv");
+        tree.addChild("books");
+        return PathIndex.of(new ImmutableTree<String>(tree));
+    }
+
+    /**
+     * Tests {@link PathIndex#get(Object...)}.
+     */
+    @Test
+    public void get() {
+        final PathIndex<String> index = createIndex();
+        Assert.assertEquals("smart", index.get("electronics", "phones", "smart").getData());
+        Assert.assertEquals("tv", index.get("electronics", "tv").getData());
+        Assert.assertSame(index.getRoot(), index.get());
+        Assert.assertNull(index.get("electronics", "radio"));
+        Assert.assertNull(index.get("books", "novels"));
+        Assert.assertFalse(index.contains(ImmutableList.of("phones")));
+    }
+
+    /**
+     * Tests {@link PathIndex#paths(Iterable)}.
+     */
+    @Test
+    public void paths() {
+        final PathIndex<String> index = createIndex();
+        final List<List<String>> expected = ImmutableList.<List<String>>of(
+            ImmutableList.of("electronics"),
+            ImmutableList.of("electronics", "phones"),
+            ImmutableList.of("electronics", "phones", "smart"),
+            ImmutableList.of("electronics", "tv"));
+        Assert.assertEquals(expected, ImmutableList.copyOf(index.paths(ImmutableList.of("electronics"))));
+        Assert.assertFalse(index.paths(ImmutableList.of("unknown")).iterator().hasNext());
+    }
+
+}
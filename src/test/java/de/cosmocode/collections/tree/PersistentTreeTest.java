@@ -0,0 +1,156 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.collect.ImmutableList;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link PersistentTree}.
+ */
+public class PersistentTreeTest {
+
+    private PersistentTree<String> createTree() {
+        final Tree<String> tree = new DefaultTree<String>(new DuplicatesNode<String>("root"));
+        final TreeNode<String> a = tree.addChild("a");
+        a.addChildren("a-1", "a-2");
+        final TreeNode<String> b = tree.addChild("b");
+        b.addChild("b-1").addChild("b-1-1");
+        return PersistentTree.copyOf(tree);
+    }
+
+    /**
+     * Tests {@link PersistentTree#copyOf(Tree)}.
+     */
+    @Test
+    public void copyOf() {
+        final PersistentTree<String> tree = createTree();
+        Assert.assertEquals(7, tree.size());
+        Assert.assertEquals(
+            ImmutableList.of("root", "a", "a-1", "a-2", "b", "b-1", "b-1-1"),
+            ImmutableList.copyOf(tree.traverse(TraverseMode.PRE_ORDER)));
+    }
+
+    /**
+     * Tests that a copy is equal to the original tree and has the same hash code.
+     */
+    @Test
+    public void equalsOriginal() {
+        final TreeNode<String> original = new DuplicatesNode<String>("root");
+        original.addChild("a").addChild("a-1");
+        original.addChild("b");
+        final PersistentTree<String> tree = PersistentTree.copyOf(original);
+        Assert.assertEquals(original, tree.getRoot());
+        Assert.assertEquals(tree.getRoot(), original);
+        Assert.assertEquals(original.hashCode(), tree.getRoot().hashCode());
+    }
+
+    /**
+     * Tests {@link PersistentTree#addChild(TreeNode, Object)}.
+     */
+    @Test
+    public void addChild() {
+        final PersistentTree<String> tree = createTree();
+        final TreeNode<String> a = tree.getRoot().getChildAt(0);
+        final PersistentTree<String> next = tree.addChild(a, "a-3");
+
+        Assert.assertEquals(7, tree.size());
+        Assert.assertEquals(8, next.size());
+        Assert.assertEquals(2, a.getNumberOfChildren());
+        Assert.assertEquals("a-3", next.getRoot().getChildAt(0).getChildAt(2).getData());
+    }
+
+    /**
+     * Tests {@link PersistentTree#insertChild(TreeNode, int, Object)}.
+     */
+    @Test
+    public void insertChild() {
+        final PersistentTree<String> tree = createTree();
+        final PersistentTree<String> next = tree.insertChild(tree.getRoot(), 1, "between");
+        Assert.assertEquals(3, next.getNumberOfChildren());
+        Assert.assertEquals("a", next.getChildAt(0).getData());
+        Assert.assertEquals("between", next.getChildAt(1).getData());
+        Assert.assertEquals("b", next.getChildAt(2).getData());
+    }
+
+    /**
+     * Tests {@link PersistentTree#remove(TreeNode)}.
+     */
+    @Test
+    public void remove() {
+        final PersistentTree<String> tree = createTree();
+        final PersistentTree<String> next = tree.remove(tree.getRoot().getChildAt(1));
+        Assert.assertEquals(4, next.size());
+        Assert.assertEquals(1, next.getNumberOfChildren());
+        Assert.assertEquals(7, tree.size());
+    }
+
+    /**
+     * Tests {@link PersistentTree#setData(TreeNode, Object)}.
+     */
+    @Test
+    public void setData() {
+        final PersistentTree<String> tree = createTree();
+        final TreeNode<String> b1 = tree.getRoot().getChildAt(1).getChildAt(0);
+        final PersistentTree<String> next = tree.setData(b1, "renamed");
+        Assert.assertEquals("renamed", next.getRoot().getChildAt(1).getChildAt(0).getData());
+        Assert.assertEquals("b-1", b1.getData());
+        Assert.assertFalse(tree.equals(next));
+        Assert.assertEquals(tree, next.setData(next.getRoot().getChildAt(1).getChildAt(0), "b-1"));
+    }
+
+    /**
+     * Tests that unchanged subtrees are still equal in the next version.
+     */
+    @Test
+    public void unchangedSubtrees() {
+        final PersistentTree<String> tree = createTree();
+        final PersistentTree<String> next = tree.addChild(tree.getRoot().getChildAt(0), "a-3");
+        final TreeNode<String> before = tree.getRoot().getChildAt(1);
+        final TreeNode<String> after = next.getRoot().getChildAt(1);
+        Assert.assertNotSame(before, after);
+        Assert.assertEquals(before, after);
+    }
+
+    /**
+     * Tests that nodes of other versions are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void foreignNode() {
+        final PersistentTree<String> tree = createTree();
+        final PersistentTree<String> next = tree.addChild(tree.getRoot(), "c");
+        next.remove(tree.getRoot().getChildAt(0));
+    }
+
+    /**
+     * Tests that the root node can't be removed.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void removeRoot() {
+        final PersistentTree<String> tree = createTree();
+        tree.remove(tree.getRoot());
+    }
+
+    /**
+     * Tests that the views are read-only.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsAreReadOnly() {
+        createTree().getRoot().addChild("c");
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import de.cosmocode.commons.io.CloseableIterator;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link TreeCodec}.
+ */
+public class TreeCodecTest {
+
+    private final TreeCodec<String> codec = TreeCodec.forStrings();
+
+    private TreeNode<String> createTree() {
+        final TreeNode<String> root = new DuplicatesNode<String>("root");
+        final TreeNode<String> a = root.addChild("a");
+        a.addChildren("a-1", "a-2");
+        root.addChild(null).addChild("äöü");
+        root.addChild("a");
+        return root;
+    }
+
+    private InputStream write(TreeNode<String> root) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(root, out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * Tests {@link TreeCodec#write(TreeNode, java.io.OutputStream)} and {@link TreeCodec#read(InputStream)}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final TreeNode<String> root = createTree();
+        Assert.assertEquals(root, codec.read(write(root)));
+    }
+
+    /**
+     * Tests {@link TreeCodec#read(InputStream)} with a degenerated tree.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deep() throws IOException {
+        final TreeNode<String> root = new DuplicatesNode<String>("0");
+        TreeNode<String> current = root;
+        for (int i = 1; i < 100000; i++) {
+            current = current.addChild(Integer.toString(i));
+        }
+
+        TreeNode<String> read = codec.read(write(root));
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertEquals(Integer.toString(i), read.getData());
+            read = i < 99999 ? read.getChildAt(0) : read;
+        }
+        Assert.assertEquals(0, read.getNumberOfChildren());
+    }
+
+    /**
+     * Tests {@link TreeCodec#readInto(InputStream, TreeNode)} using a {@link MergeNode}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readInto() throws IOException {
+        final TreeNode<String> parent = new MergeNode<String>("parent");
+        final TreeNode<String> root = codec.readInto(write(createTree()), parent);
+        Assert.assertSame(parent, root.getParent());
+        Assert.assertTrue(root instanceof MergeNode<?>);
+        // the duplicate "a" children are merged
+        Assert.assertEquals(2, root.getNumberOfChildren());
+        Assert.assertEquals(2, root.getChildAt(0).getNumberOfChildren());
+    }
+
+    /**
+     * Tests {@link TreeCodec#iterator(InputStream)}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void iterator() throws IOException {
+        final CloseableIterator<TreeCodec.Element<String>> iterator = codec.iterator(write(createTree()));
+        final List<String> actual = Lists.newArrayList();
+        try {
+            while (iterator.hasNext()) {
+                actual.add(iterator.next().toString());
+            }
+        } finally {
+            iterator.close();
+        }
+        Assert.assertEquals(ImmutableList.of(
+            "0:root", "1:a", "2:a-1", "2:a-2", "1:null", "2:äöü", "1:a"), actual);
+    }
+
+    /**
+     * Tests {@link TreeCodec#read(InputStream)} with an invalid stream.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void invalid() throws IOException {
+        codec.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}));
+    }
+
+    /**
+     * Tests {@link TreeCodec#read(InputStream)} with a data length far beyond the end of the stream.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = EOFException.class)
+    public void truncatedData() throws IOException {
+        final byte[] tree = ByteStreams.toByteArray(write(new DuplicatesNode<String>("root")));
+        // header, no children, then a length of Integer.MAX_VALUE instead of 5
+        final byte[] corrupt = Arrays.copyOf(tree, tree.length + 4);
+        System.arraycopy(new byte[] {-1, -1, -1, -1, 7}, 0, corrupt, 6, 5);
+        codec.read(new ByteArrayInputStream(corrupt));
+    }
+
+}
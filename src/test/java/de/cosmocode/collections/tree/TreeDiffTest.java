@@ -0,0 +1,129 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.beans.PropertyVetoException;
+import java.util.Random;
+
+/**
+ * Tests {@link TreeDiff}.
+ */
+public class TreeDiffTest {
+
+    private TreeNode<String> createTree() {
+        final TreeNode<String> root = new DuplicatesNode<String>("root");
+        final TreeNode<String> a = root.addChild("a");
+        a.addChildren("a-1", "a-2", "a-3");
+        root.addChild("b").addChild("b-1");
+        root.addChild("c");
+        return root;
+    }
+
+    private TreeNode<String> copy(TreeNode<String> node) {
+        final TreeNode<String> copy = new DuplicatesNode<String>(node.getData());
+        for (TreeNode<String> child : node.getChildren()) {
+            copy.addChildNode(copy(child));
+        }
+        return copy;
+    }
+
+    private void assertDiff(TreeNode<String> source, TreeNode<String> target) {
+        final TreeDiff<String> diff = TreeDiff.between(source, target);
+        final TreeNode<String> patched = copy(source);
+        diff.applyTo(patched);
+        Assert.assertEquals(diff.toString(), target, patched);
+    }
+
+    /**
+     * Tests {@link TreeDiff#between(TreeNode, TreeNode)} with equal trees.
+     */
+    @Test
+    public void equal() {
+        Assert.assertTrue(TreeDiff.between(createTree(), createTree()).isEmpty());
+    }
+
+    /**
+     * Tests {@link TreeDiff#between(TreeNode, TreeNode)} with a single relabel.
+     *
+     * @throws PropertyVetoException should not happen
+     */
+    @Test
+    public void relabel() throws PropertyVetoException {
+        final TreeNode<String> target = createTree();
+        target.getChildAt(0).getChildAt(1).setData("changed");
+        final TreeDiff<String> diff = TreeDiff.between(createTree(), target);
+        Assert.assertEquals(1, diff.getEdits().size());
+        Assert.assertEquals(TreeDiff.Operation.RELABEL, diff.getEdits().get(0).getOperation());
+        assertDiff(createTree(), target);
+    }
+
+    /**
+     * Tests {@link TreeDiff#between(TreeNode, TreeNode)} with a reordering of children.
+     */
+    @Test
+    public void move() {
+        final TreeNode<String> target = createTree();
+        final TreeNode<String> c = target.getChildAt(2);
+        target.removeChildAt(2);
+        target.insertChildAt(0, c);
+        final TreeDiff<String> diff = TreeDiff.between(createTree(), target);
+        Assert.assertEquals(1, diff.getEdits().size());
+        Assert.assertEquals(TreeDiff.Operation.MOVE, diff.getEdits().get(0).getOperation());
+        assertDiff(createTree(), target);
+    }
+
+    /**
+     * Tests {@link TreeDiff#between(TreeNode, TreeNode)} with inserts and deletes.
+     */
+    @Test
+    public void insertAndDelete() {
+        final TreeNode<String> target = createTree();
+        target.getChildAt(0).removeChildAt(0);
+        target.getChildAt(1).addChild("b-2").addChild("b-2-1");
+        target.insertChildAt(1, new DuplicatesNode<String>("new"));
+        assertDiff(createTree(), target);
+    }
+
+    /**
+     * Tests {@link TreeDiff#between(TreeNode, TreeNode)} with random trees.
+     */
+    @Test
+    public void random() {
+        final Random random = new Random(17);
+        for (int run = 0; run < 50; run++) {
+            assertDiff(randomTree(random), randomTree(random));
+        }
+    }
+
+    private TreeNode<String> randomTree(Random random) {
+        final TreeNode<String> root = new DuplicatesNode<String>("root");
+        TreeNode<String> current = root;
+        for (int i = 0; i < 40; i++) {
+            final TreeNode<String> child = new DuplicatesNode<String>(Integer.toString(random.nextInt(8)));
+            current.insertChildAt(random.nextInt(current.getNumberOfChildren() + 1), child);
+            switch (random.nextInt(3)) {
+                case 0: current = child; break;
+                case 1: current = current.getParent() == null ? current : current.getParent(); break;
+                default: break;
+            }
+        }
+        return root;
+    }
+
+}
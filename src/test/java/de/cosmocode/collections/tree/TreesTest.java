@@ -0,0 +1,150 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.collections.tree;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests {@link Trees}.
+ */
+public class TreesTest {
+
+    private static final Combiner<Object, Integer> COUNT = new Combiner<Object, Integer>() {
+
+        @Override
+        public Integer combine(Object data, List<Integer> children) {
+            int sum = 1;
+            for (Integer child : children) {
+                sum += child;
+            }
+            return sum;
+        }
+
+    };
+
+    private static final Combiner<Object, Integer> DEPTH = new Combiner<Object, Integer>() {
+
+        @Override
+        public Integer combine(Object data, List<Integer> children) {
+            int max = 0;
+            for (Integer child : children) {
+                max = Math.max(max, child);
+            }
+            return max + 1;
+        }
+
+    };
+
+    private static final Function<Object, Integer> ONE = Functions.constant(1);
+
+    private TreeNode<Integer> createTree(int width, int depth) {
+        final TreeNode<Integer> root = new DuplicatesNode<Integer>(0);
+        final List<TreeNode<Integer>> level = Lists.newArrayList();
+        level.add(root);
+        int counter = 1;
+        for (int d = 1; d < depth; d++) {
+            final List<TreeNode<Integer>> next = Lists.newArrayList();
+            for (TreeNode<Integer> node : level) {
+                for (int w = 0; w < width; w++) {
+                    next.add(node.addChild(counter++));
+                }
+            }
+            level.clear();
+            level.addAll(next);
+        }
+        return root;
+    }
+
+    /**
+     * Tests {@link Trees#fold(TreeNode, Function, Combiner)}.
+     */
+    @Test
+    public void fold() {
+        final TreeNode<Integer> root = createTree(3, 4);
+        Assert.assertEquals(Integer.valueOf(1 + 3 + 9 + 27), Trees.fold(root, ONE, COUNT));
+        Assert.assertEquals(Integer.valueOf(4), Trees.fold(root, ONE, DEPTH));
+    }
+
+    /**
+     * Tests {@link Trees#fold(TreeNode, Function, Combiner)} with a degenerated tree.
+     */
+    @Test
+    public void foldDeep() {
+        final TreeNode<Integer> root = new DuplicatesNode<Integer>(0);
+        TreeNode<Integer> current = root;
+        for (int i = 1; i < 100000; i++) {
+            current = current.addChild(i);
+        }
+        Assert.assertEquals(Integer.valueOf(100000), Trees.fold(root, ONE, DEPTH));
+    }
+
+    /**
+     * Tests {@link Trees#fold(TreeNode, Function, Combiner, ExecutorService)}.
+     */
+    @Test
+    public void foldParallel() {
+        final TreeNode<Integer> root = createTree(5, 6);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Assert.assertEquals(Trees.fold(root, ONE, COUNT), Trees.fold(root, ONE, COUNT, executor));
+            Assert.assertEquals(Integer.valueOf(6), Trees.fold(root, ONE, DEPTH, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests {@link Trees#split(TreeNode, int)}.
+     */
+    @Test
+    public void split() {
+        final TreeNode<Integer> root = createTree(4, 4);
+        final List<Iterable<Integer>> parts = Trees.split(root, 8);
+        Assert.assertTrue(parts.size() > 8);
+
+        final Set<Integer> all = Sets.newHashSet();
+        int size = 0;
+        for (Iterable<Integer> part : parts) {
+            Iterables.addAll(all, part);
+            size += Iterables.size(part);
+        }
+        Assert.assertEquals(1 + 4 + 16 + 64, size);
+        Assert.assertEquals(size, all.size());
+    }
+
+    /**
+     * Tests {@link Trees#split(TreeNode, int)} with a single part.
+     */
+    @Test
+    public void splitSingle() {
+        final TreeNode<Integer> root = createTree(2, 3);
+        final List<Iterable<Integer>> parts = Trees.split(root, 1);
+        Assert.assertEquals(1, parts.size());
+        Assert.assertEquals(Lists.newArrayList(0, 1, 3, 4, 2, 5, 6), Lists.newArrayList(parts.get(0)));
+    }
+
+}
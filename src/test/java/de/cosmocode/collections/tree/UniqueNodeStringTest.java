@@ -15,11 +15,18 @@
  */
 package de.cosmocode.collections.tree;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import junit.framework.Assert;
 import org.junit.Test;
 
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyVetoException;
+import java.beans.VetoableChangeListener;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 
@@ -182,5 +189,126 @@ public class UniqueNodeStringTest extends TreeNodeTest<String> {
         final TreeNode<String> node = getRoot().addChild(newData());
         node.setData(data);
     }
+    
+    /**
+     * Tests {@link TreeNode#insertChildAt(int, TreeNode)}, {@link TreeNode#getChildAt(int)}
+     * and {@link TreeNode#removeChildNode(TreeNode)} at arbitrary positions.
+     */
+    @Test
+    public void testInsertAndRemoveAtPositions() {
+        final TreeNode<String> root = emptyNode();
+        final List<String> expected = Lists.newArrayList();
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final int index = random.nextInt(expected.size() + 1);
+            final String data = "child-" + i;
+            root.insertChildAt(index, newNode(data));
+            expected.add(index, data);
+            if (i % 7 == 0) {
+                final String removed = expected.remove(random.nextInt(expected.size()));
+                root.removeChildNode(Iterables.find(root.getChildren(), new Predicate<TreeNode<String>>() {
+                    
+                    @Override
+                    public boolean apply(TreeNode<String> input) {
+                        return removed.equals(input.getData());
+                    }
+                    
+                }));
+            }
+        }
+        
+        Assert.assertEquals(expected.size(), root.getNumberOfChildren());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), root.getChildAt(i).getData());
+            Assert.assertTrue(root.hasChild(expected.get(i)));
+        }
+    }
+    
+    /**
+     * Tests {@link TreeNode#setData(Object)} on a removed child, which must no longer
+     * be restricted by its former parent.
+     * @throws PropertyVetoException should not happen
+     */
+    @Test
+    public void testSetDataAfterRemove() throws PropertyVetoException {
+        final String data = newData();
+        getRoot().addChild(data);
+        final TreeNode<String> node = getRoot().addChild(newData());
+        getRoot().removeChildNode(node);
+        node.setData(data);
+        Assert.assertEquals(data, node.getData());
+        Assert.assertEquals(1, getRoot().getNumberOfChildren());
+    }
+    
+    /**
+     * Tests {@link TreeNode#setData(Object)} on a moved child, which must be
+     * restricted by its new parent only.
+     * @throws PropertyVetoException expected, must be thrown
+     */
+    @Test(expected = PropertyVetoException.class)
+    public void testSetDataAfterMove() throws PropertyVetoException {
+        final TreeNode<String> other = newNode(newData());
+        final String data = newData();
+        other.addChild(data);
+        final TreeNode<String> node = getRoot().addChild(newData());
+        node.changeParent(other);
+        Assert.assertTrue(other.hasChild(node.getData()));
+        node.setData(data);
+    }
+    
+    /**
+     * Tests {@link TreeNode#setData(Object)} with the same data as a sibling, which must be
+     * rejected before any vetoable change listener of the child approves it.
+     */
+    @Test
+    public void testSetDataSameListenerNotAsked() {
+        final String data = newData();
+        getRoot().addChild(data);
+        final TreeNode<String> node = getRoot().addChild(newData());
+        final List<PropertyChangeEvent> events = Lists.newArrayList();
+        node.addVetoableChangeListener(new VetoableChangeListener() {
+            
+            @Override
+            public void vetoableChange(PropertyChangeEvent evt) {
+                events.add(evt);
+            }
+            
+        });
+        try {
+            node.setData(data);
+            Assert.fail("duplicate data not rejected");
+        } catch (PropertyVetoException e) {
+            Assert.assertTrue(events.isEmpty());
+        }
+    }
+    
+    /**
+     * Tests {@link TreeNode#setData(Object)} on a child which doesn't support changing its data,
+     * which must leave the key of the child in its parent untouched.
+     * @throws PropertyVetoException should not happen
+     */
+    @Test
+    public void testSetDataUnsupported() throws PropertyVetoException {
+        final String oldData = newData();
+        final TreeNode<String> node = new UniqueNode<String>(oldData) {
+            
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            public void setDataUnchecked(String newData) {
+                throw new UnsupportedOperationException();
+            }
+            
+        };
+        getRoot().addChildNode(node);
+        final String newData = newData();
+        try {
+            node.setData(newData);
+            Assert.fail("setDataUnchecked not called");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertTrue(getRoot().hasChild(oldData));
+            Assert.assertFalse(getRoot().hasChild(newData));
+        }
+    }
 
 }
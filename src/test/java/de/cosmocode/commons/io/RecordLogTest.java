@@ -0,0 +1,229 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.io;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests {@link RecordLog}.
+ *
+ * @since 1.21
+ */
+public final class RecordLogTest {
+
+    private File file;
+
+    private RecordLog<String> log;
+
+    /**
+     * Creates an empty log file.
+     *
+     * @throws IOException should not happen
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("records", ".log");
+        Assert.assertTrue(file.delete());
+        log = new RecordLog<String>(file, String.class, Serializers.defaults());
+    }
+
+    /**
+     * Deletes the log file.
+     */
+    @After
+    public void tearDown() {
+        Assert.assertTrue(file.delete());
+    }
+
+    /**
+     * Tests {@link RecordLog.Writer#append(Object)} and {@link RecordLog#iterator()}
+     * using multiple writers.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void appendAndRead() throws IOException {
+        final RecordLog.Writer<String> first = log.openWriter(RecordLog.Sync.NONE);
+        first.append("a");
+        first.append(null);
+        first.close();
+        final RecordLog.Writer<String> second = log.openWriter(RecordLog.Sync.ALWAYS);
+        second.append("c");
+        second.close();
+        Assert.assertEquals(file.length(), second.getOffset());
+
+        Assert.assertEquals(Lists.newArrayList("a", null, "c"), read(log.iterator()));
+    }
+
+    /**
+     * Tests {@link RecordLog#iterator(long)} with offsets returned by {@link RecordLog.Writer#append(Object)}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void seek() throws IOException {
+        final RecordLog.Writer<String> writer = log.openWriter(RecordLog.Sync.ON_FLUSH);
+        final List<Long> offsets = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            offsets.add(writer.append(Integer.toString(i)));
+        }
+        writer.close();
+
+        final CloseableIterator<String> iterator = log.iterator(offsets.get(998));
+        Assert.assertEquals("998", iterator.next());
+        Assert.assertEquals("999", iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        iterator.close();
+        Assert.assertEquals(ImmutableList.of(), read(log.iterator(writer.getOffset())));
+    }
+
+    /**
+     * Tests {@link RecordLog#iterator()} and {@link RecordLog#recover()} with an incomplete last record.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void incomplete() throws IOException {
+        final RecordLog.Writer<String> writer = log.openWriter(RecordLog.Sync.NONE);
+        writer.append("complete");
+        final long last = writer.append("incomplete");
+        writer.close();
+        truncate(file.length() - 2);
+
+        Assert.assertEquals(ImmutableList.of("complete"), read(log.iterator()));
+        Assert.assertEquals(last, log.recover());
+        Assert.assertEquals(last, file.length());
+
+        final RecordLog.Writer<String> appender = log.openWriter(RecordLog.Sync.NONE);
+        appender.append("appended");
+        appender.close();
+        Assert.assertEquals(ImmutableList.of("complete", "appended"), read(log.iterator()));
+    }
+
+    /**
+     * Tests {@link RecordLog#iterator()} with a record whose checksum doesn't match.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalStateException.class)
+    public void corrupt() throws IOException {
+        final RecordLog.Writer<String> writer = log.openWriter(RecordLog.Sync.NONE);
+        writer.append("value");
+        writer.close();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            raf.write('x');
+        } finally {
+            raf.close();
+        }
+        read(log.iterator());
+    }
+
+    /**
+     * Tests {@link RecordLog#iterator()} and {@link RecordLog#recover()} with a corrupt length
+     * of a record which is followed by valid records.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void corruptLength() throws IOException {
+        final RecordLog.Writer<String> writer = log.openWriter(RecordLog.Sync.NONE);
+        final long first = writer.append("first");
+        writer.append("second");
+        writer.close();
+        final long length = file.length();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(first);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            read(log.iterator());
+            Assert.fail("corrupt length not detected");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof StreamCorruptedException);
+        }
+        try {
+            log.recover();
+            Assert.fail("valid records must not be truncated");
+        } catch (StreamCorruptedException e) {
+            Assert.assertEquals(length, file.length());
+        }
+    }
+
+    /**
+     * Tests {@link RecordLog#recover()} with zeros and garbage at the end of the log.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void garbageTail() throws IOException {
+        final RecordLog.Writer<String> writer = log.openWriter(RecordLog.Sync.NONE);
+        writer.append("value");
+        writer.close();
+        final long length = file.length();
+
+        final byte[] garbage = new byte[100];
+        new Random(0).nextBytes(garbage);
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[100]);
+            out.write(garbage);
+        } finally {
+            out.close();
+        }
+
+        Assert.assertEquals(length, log.recover());
+        Assert.assertEquals(ImmutableList.of("value"), read(log.iterator()));
+    }
+
+    private void truncate(long length) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static List<String> read(CloseableIterator<String> iterator) throws IOException {
+        try {
+            return Lists.newArrayList(iterator);
+        } finally {
+            iterator.close();
+        }
+    }
+
+}
@@ -0,0 +1,350 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.cosmocode.collections.tree.DuplicatesNode;
+import de.cosmocode.collections.tree.TreeNode;
+import de.cosmocode.collections.utility.Utility;
+import de.cosmocode.collections.utility.UtilityMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link Serialization}.
+ *
+ * @since 1.21
+ */
+public final class SerializationTest {
+
+    /**
+     * Tests {@link Serialization#save(Serializable, File)} and {@link Serialization#restore(Class, File)}.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void file() throws IOException, ClassNotFoundException {
+        final ArrayList<Integer> list = Lists.newArrayList();
+        for (int i = 0; i < 100000; i++) {
+            list.add(i);
+        }
+        final File file = File.createTempFile("serialization", ".ser");
+        try {
+            Serialization.save(list, file);
+            Assert.assertEquals(list, Serialization.restore(ArrayList.class, file));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests {@link Serialization#save(Serializable)} with a reused buffer.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void bytes() throws IOException, ClassNotFoundException {
+        final byte[] large = Serialization.save(Lists.newArrayList("a", "b", "c"));
+        final byte[] small = Serialization.save("a");
+        Assert.assertEquals(Lists.newArrayList("a", "b", "c"), Serialization.restore(ArrayList.class, large));
+        Assert.assertEquals("a", Serialization.restore(String.class, small));
+        Assert.assertArrayEquals(small, Serialization.save("a", 0));
+    }
+
+    /**
+     * Tests {@link Serialization#releaseBuffer()}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void releaseBuffer() throws IOException {
+        final byte[] before = Serialization.save("a");
+        Serialization.releaseBuffer();
+        Serialization.releaseBuffer();
+        Assert.assertArrayEquals(before, Serialization.save("a"));
+    }
+
+    /**
+     * Tests {@link Serialization#save(Serializable)} being called while saving another object.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void nested() throws IOException, ClassNotFoundException {
+        final Nested nested = Serialization.restore(Nested.class, Serialization.save(new Nested()));
+        Assert.assertEquals("inner", Serialization.restore(String.class, nested.inner));
+    }
+
+    /**
+     * Tests {@link Serialization#save(Object, Serializers)} and
+     * {@link Serialization#restore(Class, byte[], Serializers)} with the built-in serializers.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void serializers() throws IOException, ClassNotFoundException {
+        final Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("string", "value");
+        map.put("int", -42);
+        map.put("long", Long.MAX_VALUE);
+        map.put("double", 1.5);
+        map.put("date", new Date(123456789L));
+        map.put("enum", TimeUnit.SECONDS);
+        map.put("list", Lists.newArrayList(1, null, "two"));
+        map.put("set", ImmutableSet.of('a', 'b'));
+        map.put("bytes", new byte[] {1, 2, 3});
+        map.put("jdk", "jdk".toCharArray());
+        map.put("null", null);
+
+        final byte[] bytes = Serialization.save(map, Serializers.defaults());
+        Assert.assertTrue(bytes.length < Serialization.save(Maps.newLinkedHashMap(map)).length);
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> restored = Serialization.restore(Map.class, bytes, Serializers.defaults());
+        Assert.assertEquals(ImmutableList.copyOf(map.keySet()), ImmutableList.copyOf(restored.keySet()));
+        Assert.assertEquals(-42, restored.get("int"));
+        Assert.assertEquals(Long.MAX_VALUE, restored.get("long"));
+        Assert.assertEquals(new Date(123456789L), restored.get("date"));
+        Assert.assertSame(TimeUnit.SECONDS, restored.get("enum"));
+        Assert.assertEquals(Lists.newArrayList(1, null, "two"), restored.get("list"));
+        Assert.assertEquals(ImmutableSet.of('a', 'b'), restored.get("set"));
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) restored.get("bytes"));
+        Assert.assertArrayEquals("jdk".toCharArray(), (char[]) restored.get("jdk"));
+        Assert.assertNull(restored.get("null"));
+        Assert.assertTrue(restored.containsKey("null"));
+    }
+
+    /**
+     * Tests {@link Serializers} with utility maps and trees.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void serializersUtilityMapAndTree() throws IOException, ClassNotFoundException {
+        final UtilityMap<String, Object> map = Utility.createUtilityMap();
+        map.put("key", 1);
+        @SuppressWarnings("unchecked")
+        final UtilityMap<String, Object> restoredMap = Serialization.restore(UtilityMap.class, 
+            Serialization.save(map, Serializers.defaults()), Serializers.defaults());
+        Assert.assertEquals(1, restoredMap.getInt("key"));
+
+        final TreeNode<Object> root = new DuplicatesNode<Object>("root");
+        root.addChild(1).addChild(TimeUnit.DAYS);
+        root.addChild(null);
+        final TreeNode<?> restoredRoot = Serialization.restore(TreeNode.class, 
+            Serialization.save(root, Serializers.defaults()), Serializers.defaults());
+        Assert.assertEquals("root", restoredRoot.getData());
+        Assert.assertEquals(2, restoredRoot.getNumberOfChildren());
+        final TreeNode<?> first = restoredRoot.getChildren().iterator().next();
+        Assert.assertEquals(1, first.getData());
+        Assert.assertEquals(TimeUnit.DAYS, first.getChildren().iterator().next().getData());
+    }
+
+    /**
+     * Tests {@link Serializers.Builder#register(int, Class, Serializer)}.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void customSerializer() throws IOException, ClassNotFoundException {
+        final Serializers serializers = Serializers.builder().register(Serializers.FIRST_CUSTOM_TAG, Point.class,
+            new Serializer<Point>() {
+
+                @Override
+                public void write(Point value, DataOutputStream out, Serializers registry) throws IOException {
+                    Serializers.writeSignedVarLong(out, value.x);
+                    Serializers.writeSignedVarLong(out, value.y);
+                }
+
+                @Override
+                public Point read(DataInputStream in, Serializers registry) throws IOException {
+                    final int x = (int) Serializers.readSignedVarLong(in);
+                    return new Point(x, (int) Serializers.readSignedVarLong(in));
+                }
+
+            }).build();
+        final byte[] bytes = Serialization.save(new Point(3, -4), serializers);
+        Assert.assertEquals(3, bytes.length);
+        final Point point = Serialization.restore(Point.class, bytes, serializers);
+        Assert.assertEquals(3, point.x);
+        Assert.assertEquals(-4, point.y);
+    }
+
+    /**
+     * Tests that enum constants are written by name instead of by ordinal.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void serializersEnumByName() throws IOException, ClassNotFoundException {
+        final byte[] bytes = Serialization.save(TimeUnit.SECONDS, Serializers.defaults());
+        Assert.assertTrue(new String(bytes, Charsets.UTF_8).endsWith("SECONDS"));
+        Assert.assertSame(TimeUnit.SECONDS, Serialization.restore(TimeUnit.class, bytes, Serializers.defaults()));
+    }
+
+    /**
+     * Tests that enum classes are loaded using the context class loader of the current thread.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void serializersEnumContextClassLoader() throws IOException, ClassNotFoundException {
+        final byte[] bytes = Serialization.save(RoundingMode.UP, Serializers.defaults());
+        final List<String> requested = Lists.newArrayList();
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(new ClassLoader(getClass().getClassLoader()) {
+
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                requested.add(name);
+                return super.loadClass(name, resolve);
+            }
+
+        });
+        try {
+            Assert.assertSame(RoundingMode.UP,
+                Serialization.restore(RoundingMode.class, bytes, Serializers.defaults()));
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+        Assert.assertEquals(ImmutableList.of(RoundingMode.class.getName()), requested);
+    }
+
+    /**
+     * Tests {@link Serialization#restore(Class, java.io.InputStream, Serializers)} with several
+     * values saved to the same stream.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void serializersConsecutive() throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serialization.save("first", out, Serializers.defaults());
+        Serialization.save(2, out, Serializers.defaults());
+        Serialization.save(TimeUnit.DAYS, out, Serializers.defaults());
+        final InputStream in = new BufferedInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals("first", Serialization.restore(String.class, in, Serializers.defaults()));
+        Assert.assertEquals(2, Serialization.restore(Integer.class, in, Serializers.defaults()).intValue());
+        Assert.assertSame(TimeUnit.DAYS, Serialization.restore(TimeUnit.class, in, Serializers.defaults()));
+        Assert.assertEquals(-1, in.read());
+    }
+
+    /**
+     * Tests {@link Serializers.Builder#registerHierarchy(int, Class, Serializer)} taking precedence
+     * over built-in serializers for exact types.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void customHierarchySerializer() throws IOException, ClassNotFoundException {
+        final Serializers serializers = Serializers.builder().registerHierarchy(Serializers.FIRST_CUSTOM_TAG,
+            Number.class, new Serializer<Number>() {
+
+                @Override
+                public void write(Number value, DataOutputStream out, Serializers registry) throws IOException {
+                    Serializers.writeString(out, value.toString());
+                }
+
+                @Override
+                public Number read(DataInputStream in, Serializers registry) throws IOException {
+                    return new BigDecimal(Serializers.readString(in));
+                }
+
+            }).build();
+        Assert.assertEquals(new BigDecimal("42"), Serialization.restore(Number.class,
+            Serialization.save(42, serializers), serializers));
+        Assert.assertEquals("text", Serialization.restore(String.class,
+            Serialization.save("text", serializers), serializers));
+        Assert.assertEquals(42, Serialization.restore(Integer.class,
+            Serialization.save(42, Serializers.defaults()), Serializers.defaults()).intValue());
+    }
+
+    /**
+     * Tests {@link Serialization#save(Object, Serializers)} with a value which can't be serialized.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = NotSerializableException.class)
+    public void serializersNotSerializable() throws IOException {
+        Serialization.save(new Point(1, 2), Serializers.defaults());
+    }
+
+    /**
+     * A value without a built-in serializer, which is not serializable.
+     */
+    private static final class Point {
+
+        private final int x;
+
+        private final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+    }
+
+    /**
+     * Stores another serialized object using {@link Serialization#save(Serializable)}.
+     */
+    private static final class Nested implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private byte[] inner;
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            inner = Serialization.save("inner");
+            out.defaultWriteObject();
+        }
+
+    }
+
+}
@@ -0,0 +1,480 @@
+/**
+ * Copyright 2010 - 2013 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.commons.reflect;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Modifier;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Tests {@link DefaultPackages} and {@link ClassFile}.
+ *
+ * @since 1.21
+ */
+public final class DefaultPackagesTest {
+
+    private static final Object ANONYMOUS = new Object() { };
+
+    private static boolean initialized;
+
+    /**
+     * Test annotation, which is inherited by sub classes.
+     */
+    @Inherited
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Marker {
+        
+        String value() default "";
+        
+        Class<?>[] types() default { };
+        
+    }
+
+    /**
+     * Marker interface of all fixtures.
+     */
+    public interface Fixture {
+        
+    }
+
+    /**
+     * Fixture interface extending another one.
+     */
+    public interface ExtendedFixture extends Fixture {
+        
+    }
+
+    /**
+     * Fixture whose super class is outside of the scanned packages.
+     */
+    public abstract static class ExtendedList extends AbstractList<String> implements ExtendedFixture {
+        
+    }
+
+    /**
+     * Annotated fixture.
+     */
+    @Marker(value = "marked", types = { String.class, int[].class })
+    @Deprecated
+    public abstract static class Marked implements Fixture, Serializable {
+        
+        private static final long serialVersionUID = 1L;
+        
+    }
+
+    /**
+     * Inherits {@link Marker} from its super class.
+     */
+    public abstract static class InheritsMarker extends Marked {
+        
+        private static final long serialVersionUID = 1L;
+        
+    }
+
+    /**
+     * Fixture which must never be initialized by a scan.
+     */
+    public static final class Untouched {
+        
+        static {
+            initialized = true;
+        }
+        
+    }
+
+    private Packages packages() {
+        return Reflection.defaultClasspath().restrictTo(getClass().getPackage().getName());
+    }
+
+    /**
+     * Tests {@link ClassFile#read(InputStream)}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readClassFile() throws IOException {
+        final InputStream stream = Marked.class.getResourceAsStream("DefaultPackagesTest$Marked.class");
+        final ClassFile file;
+        try {
+            file = ClassFile.read(stream);
+        } finally {
+            stream.close();
+        }
+        Assert.assertEquals(Marked.class.getName(), file.getName());
+        Assert.assertEquals(Object.class.getName(), file.getSuperName());
+        Assert.assertEquals(ImmutableList.of(Fixture.class.getName(), Serializable.class.getName()),
+            file.getInterfaceNames());
+        Assert.assertEquals(ImmutableSet.of(Marker.class.getName(), Deprecated.class.getName()),
+            file.getAnnotationNames());
+        Assert.assertTrue(file.isAbstract());
+        Assert.assertFalse(file.isInterface());
+        Assert.assertTrue(Modifier.isPublic(file.getAccessFlags()));
+    }
+
+    /**
+     * Tests {@link DefaultPackages#subclassesOf(Class)}.
+     */
+    @Test
+    public void subclassesOf() {
+        final Iterable<Class<? extends Fixture>> found = packages().subclassesOf(Fixture.class);
+        Assert.assertEquals(ImmutableSet.of(Fixture.class, ExtendedFixture.class, ExtendedList.class,
+            Marked.class, InheritsMarker.class), ImmutableSet.copyOf(found));
+        Assert.assertFalse(initialized);
+    }
+
+    /**
+     * Tests {@link DefaultPackages#subclassesOf(Class)} with a super type outside of the scanned packages.
+     */
+    @Test
+    public void subclassesOfOutside() {
+        Assert.assertEquals(ImmutableSet.of(ExtendedList.class),
+            ImmutableSet.copyOf(packages().subclassesOf(Collection.class)));
+        // enums are serializable by their outside super class
+        final ImmutableSet<Class<?>> serializable = ImmutableSet.<Class<?>>copyOf(
+            packages().filter(Serializable.class, Predicates.alwaysTrue()));
+        Assert.assertTrue(serializable.contains(InheritsMarker.class));
+        Assert.assertTrue(serializable.contains(GetName.class));
+        Assert.assertFalse(serializable.contains(ExtendedList.class));
+        Assert.assertFalse(initialized);
+    }
+
+    /**
+     * Tests {@link DefaultPackages#annotatedWith(Class)}.
+     */
+    @Test
+    public void annotatedWith() {
+        Assert.assertEquals(ImmutableSet.of(Marked.class, InheritsMarker.class),
+            ImmutableSet.copyOf(packages().annotatedWith(Marker.class)));
+        final ImmutableSet<Class<?>> deprecated = ImmutableSet.copyOf(packages().annotatedWith(Deprecated.class));
+        Assert.assertTrue(deprecated.contains(Marked.class));
+        // Deprecated is not inherited
+        Assert.assertFalse(deprecated.contains(InheritsMarker.class));
+        Assert.assertFalse(initialized);
+    }
+
+    /**
+     * Tests that jars are scanned and that only class files in the requested packages are read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void scanJar() throws IOException {
+        final File file = File.createTempFile("packages", ".jar");
+        try {
+            writeJar(file, Marked.class, InheritsMarker.class);
+            final Packages packages = new DefaultClasspath(file.getAbsolutePath()).restrictTo(
+                getClass().getPackage().getName(), "unknown");
+            Assert.assertEquals(ImmutableSet.of(Marked.class, InheritsMarker.class),
+                ImmutableSet.copyOf(packages.annotatedWith(Marker.class)));
+            // sorted by name, like classes read from an index
+            Assert.assertEquals(ImmutableList.of(InheritsMarker.class, Marked.class), ImmutableList.copyOf(packages));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that files on the classpath which are no jars are skipped.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void scanNoJar() throws IOException {
+        final File file = File.createTempFile("packages", ".jar");
+        final File other = File.createTempFile("packages", ".properties");
+        try {
+            writeJar(file, Marked.class);
+            Files.write("key=value", other, Charsets.UTF_8);
+            final Packages packages = new DefaultClasspath(other.getAbsolutePath() + File.pathSeparator +
+                file.getAbsolutePath()).restrictTo(getClass().getPackage().getName());
+            Assert.assertEquals(ImmutableList.of(Marked.class), ImmutableList.copyOf(packages));
+        } finally {
+            Assert.assertTrue(file.delete());
+            Assert.assertTrue(other.delete());
+        }
+    }
+
+    /**
+     * Tests {@link Reflection#classpathOf(String, File)}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void index() throws IOException {
+        final File file = File.createTempFile("packages", ".jar");
+        final File directory = Files.createTempDir();
+        try {
+            writeJar(file, Marked.class, InheritsMarker.class);
+            final Classpath classpath = Reflection.classpathOf(file.getAbsolutePath(), directory);
+            final String name = getClass().getPackage().getName();
+            Assert.assertEquals(ImmutableSet.of(Marked.class, InheritsMarker.class),
+                ImmutableSet.copyOf(classpath.restrictTo(name).annotatedWith(Marker.class)));
+            Assert.assertEquals(1, directory.listFiles().length);
+
+            // read from the index
+            Assert.assertEquals(ImmutableSet.of(Marked.class, InheritsMarker.class),
+                ImmutableSet.copyOf(classpath.restrictTo(name).annotatedWith(Marker.class)));
+            Assert.assertTrue(Iterables.isEmpty(classpath.restrictTo("other")));
+
+            // modified entries are rescanned
+            final long modified = file.lastModified();
+            writeJar(file, Marked.class);
+            Assert.assertTrue(file.setLastModified(modified + 2000));
+            Assert.assertEquals(ImmutableSet.of(Marked.class),
+                ImmutableSet.copyOf(classpath.restrictTo(name).annotatedWith(Marker.class)));
+            Assert.assertEquals(1, directory.listFiles().length);
+        } finally {
+            Assert.assertTrue(file.delete());
+            for (File index : directory.listFiles()) {
+                Assert.assertTrue(index.delete());
+            }
+            Assert.assertTrue(directory.delete());
+        }
+    }
+
+    /**
+     * Tests that entries containing a {@link ClassIndex} are read from that index instead of being scanned.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compiledIndex() throws IOException {
+        final File file = File.createTempFile("packages", ".jar");
+        try {
+            // the class files are unreadable, the anonymous class is not part of the index
+            final JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+            try {
+                for (Class<?> type : ImmutableList.of(Marked.class, InheritsMarker.class, ANONYMOUS.getClass())) {
+                    jar.putNextEntry(new ZipEntry(type.getName().replace('.', '/') + ".class"));
+                    jar.write(new byte[] {1, 2, 3});
+                    jar.closeEntry();
+                }
+                writeIndex(jar, Marked.class, InheritsMarker.class);
+            } finally {
+                jar.close();
+            }
+            final Packages packages = new DefaultClasspath(file.getAbsolutePath()).restrictTo(
+                getClass().getPackage().getName());
+            Assert.assertEquals(ImmutableSet.of(Marked.class, InheritsMarker.class),
+                ImmutableSet.copyOf(packages.annotatedWith(Marker.class)));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that entries whose {@link ClassIndex} doesn't list exactly their class files are scanned.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compiledIndexOutdated() throws IOException {
+        final File file = File.createTempFile("packages", ".jar");
+        try {
+            final JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+            try {
+                copyInto(jar, Marked.class);
+                copyInto(jar, InheritsMarker.class);
+                copyInto(jar, ANONYMOUS.getClass());
+                writeIndex(jar, Marked.class);
+            } finally {
+                jar.close();
+            }
+            final Packages packages = new DefaultClasspath(file.getAbsolutePath()).restrictTo(
+                getClass().getPackage().getName());
+            // unlike the index, scanning includes anonymous classes
+            Assert.assertEquals(ImmutableSet.of(InheritsMarker.class, Marked.class, ANONYMOUS.getClass()),
+                ImmutableSet.copyOf(packages));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that the {@link ClassIndex} of a directory is only compared with the class files
+     * of the requested packages.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compiledIndexDirectory() throws IOException {
+        final File directory = Files.createTempDir();
+        try {
+            // the class files are unreadable, the other package is not part of the index
+            final List<String> paths = Lists.newArrayList("other/Stale.class");
+            for (Class<?> type : ImmutableList.of(Marked.class, InheritsMarker.class, ANONYMOUS.getClass())) {
+                paths.add(type.getName().replace('.', '/') + ".class");
+            }
+            for (String path : paths) {
+                final File classFile = new File(directory, path);
+                Files.createParentDirs(classFile);
+                Files.write(new byte[] {1, 2, 3}, classFile);
+            }
+            final File indexFile = new File(directory, ClassIndex.LOCATION);
+            Files.createParentDirs(indexFile);
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), Charsets.UTF_8);
+            try {
+                ClassIndex.write(writer, ImmutableList.of(readClassFile(Marked.class),
+                    readClassFile(InheritsMarker.class)));
+            } finally {
+                writer.close();
+            }
+            final Packages packages = new DefaultClasspath(directory.getAbsolutePath()).restrictTo(
+                getClass().getPackage().getName());
+            Assert.assertEquals(ImmutableSet.of(Marked.class, InheritsMarker.class),
+                ImmutableSet.copyOf(packages.annotatedWith(Marker.class)));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Tests that the {@link ClassIndexProcessor} writes the same headers javac writes to the class files.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void processor() throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        final File directory = Files.createTempDir();
+        try {
+            final File source = new File(directory, "Sample.java");
+            Files.write(
+                "package example;\n" +
+                "@Deprecated public abstract class Sample implements Runnable, java.io.Serializable {\n" +
+                "    protected interface Nested { }\n" +
+                "    private static final class Hidden extends Sample implements Nested {\n" +
+                "        public void run() { }\n" +
+                "    }\n" +
+                "}\n", source, Charsets.UTF_8);
+            Assert.assertEquals(0, compiler.run(null, null, null,
+                "-d", directory.getAbsolutePath(),
+                "-processorpath", System.getProperty("java.class.path"),
+                "-processor", ClassIndexProcessor.class.getName(),
+                source.getAbsolutePath()));
+
+            final InputStream stream = new FileInputStream(new File(directory, ClassIndex.LOCATION));
+            final Map<String, ClassFile> index;
+            try {
+                index = ClassIndex.read(stream);
+            } finally {
+                stream.close();
+            }
+            Assert.assertEquals(ImmutableList.of("example.Sample", "example.Sample$Hidden", "example.Sample$Nested"),
+                ImmutableList.copyOf(index.keySet()));
+            for (ClassFile indexed : index.values()) {
+                final InputStream classStream = new FileInputStream(
+                    new File(directory, indexed.getName().replace('.', '/') + ".class"));
+                final ClassFile expected;
+                try {
+                    expected = ClassFile.read(classStream);
+                } finally {
+                    classStream.close();
+                }
+                Assert.assertEquals(expected.toString(), indexed.toString());
+                Assert.assertEquals(expected.getAccessFlags(), indexed.getAccessFlags());
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Assert.assertTrue(file.delete());
+    }
+
+    private ClassFile readClassFile(Class<?> type) throws IOException {
+        final InputStream stream = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class");
+        try {
+            return ClassFile.read(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void writeIndex(JarOutputStream jar, Class<?>... types) throws IOException {
+        final List<ClassFile> files = Lists.newArrayList();
+        for (Class<?> type : types) {
+            files.add(readClassFile(type));
+        }
+        jar.putNextEntry(new ZipEntry(ClassIndex.LOCATION));
+        ClassIndex.write(new OutputStreamWriter(jar, Charsets.UTF_8), files);
+        jar.closeEntry();
+    }
+
+    private void writeJar(File file, Class<?>... types) throws IOException {
+        final JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (Class<?> type : types) {
+                copyInto(jar, type);
+            }
+            jar.putNextEntry(new ZipEntry("other/Broken.class"));
+            jar.write(new byte[] {1, 2, 3});
+            jar.closeEntry();
+        } finally {
+            jar.close();
+        }
+    }
+
+    private void copyInto(JarOutputStream jar, Class<?> type) throws IOException {
+        final String path = type.getName().replace('.', '/') + ".class";
+        jar.putNextEntry(new ZipEntry(path));
+        final InputStream stream = type.getResourceAsStream("/" + path);
+        try {
+            ByteStreams.copy(stream, jar);
+        } finally {
+            stream.close();
+        }
+        jar.closeEntry();
+    }
+
+}
@@ -16,8 +16,22 @@
 package de.cosmocode.commons.reflect;
 
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
 /**
  * Tests {@link Reflection}.
  *
@@ -35,4 +49,197 @@ public final class ReflectionTest {
         packages.filter(Number.class, Predicates.notNull());
     }
 
+    /**
+     * Tests {@link Reflection#getAllSuperTypes(Class)}.
+     */
+    @Test
+    public void getAllSuperTypes() {
+        Assert.assertEquals(ImmutableList.<Class<?>>of(
+            ArrayList.class, AbstractList.class, List.class, RandomAccess.class, Cloneable.class, 
+            Serializable.class, AbstractCollection.class, Collection.class, Object.class, Iterable.class
+        ), Reflection.getAllSuperTypes(ArrayList.class));
+        Assert.assertSame(Reflection.getAllSuperTypes(ArrayList.class), Reflection.getAllSuperTypes(ArrayList.class));
+    }
+
+    /**
+     * Tests {@link Reflection#getAllInterfaces(Class)}.
+     */
+    @Test
+    public void getAllInterfaces() {
+        Assert.assertEquals(ImmutableList.<Class<?>>of(
+            List.class, RandomAccess.class, Cloneable.class, Serializable.class, Collection.class, Iterable.class
+        ), Reflection.getAllInterfaces(ArrayList.class));
+    }
+
+    /**
+     * Tests {@link Reflection#sortByHierarchy(Iterable)}.
+     */
+    @Test
+    public void sortByHierarchy() {
+        Assert.assertEquals(ImmutableList.<Class<?>>of(
+            Integer.class, Number.class, ArrayList.class, Serializable.class, AbstractList.class,
+            AbstractCollection.class, List.class, Collection.class, Object.class
+        ), Reflection.sortByHierarchy(ImmutableList.<Class<?>>of(
+            Object.class, Serializable.class, Number.class, List.class, Integer.class,
+            AbstractCollection.class, Collection.class, ArrayList.class, AbstractList.class, List.class
+        )));
+    }
+
+    /**
+     * Tests {@link Reflection#sortByHierarchy(Iterable, java.util.Comparator)} with a reversed comparator.
+     */
+    @Test
+    public void sortByHierarchyReversed() {
+        final List<Class<?>> sorted = Reflection.sortByHierarchy(ImmutableList.<Class<?>>of(
+            Number.class, ArrayList.class, Integer.class, List.class, Long.class
+        ), Reflection.orderByName().reverse());
+        Assert.assertEquals(ImmutableList.<Class<?>>of(
+            ArrayList.class, List.class, Long.class, Integer.class, Number.class
+        ), sorted);
+    }
+
+    /**
+     * Tests {@link Reflection#sortByHierarchy(Iterable, java.util.Comparator)} with a comparator
+     * which considers all classes equal.
+     */
+    @Test
+    public void sortByHierarchyStable() {
+        final List<Class<?>> sorted = Reflection.sortByHierarchy(ImmutableList.<Class<?>>of(
+            String.class, Number.class, Long.class, ArrayList.class, Integer.class, Serializable.class
+        ), Ordering.allEqual());
+        Assert.assertEquals(ImmutableList.<Class<?>>of(
+            String.class, Long.class, ArrayList.class, Integer.class, Number.class, Serializable.class
+        ), sorted);
+    }
+
+    /**
+     * Tests {@link Reflection#forName(String)}.
+     * 
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void forName() throws ClassNotFoundException {
+        Assert.assertSame(ArrayList.class, Reflection.forName("java.util.ArrayList"));
+        Assert.assertSame(ArrayList.class, Reflection.forName("java.util.ArrayList", null));
+        Assert.assertSame(ReflectionTest.class, Reflection.forName(ReflectionTest.class.getName(), 
+            ReflectionTest.class.getClassLoader()));
+    }
+
+    /**
+     * Tests {@link Reflection#forName(String)} with a missing class, which is looked up twice.
+     * 
+     * @throws ClassNotFoundException expected
+     */
+    @Test(expected = ClassNotFoundException.class)
+    public void forNameMissing() throws ClassNotFoundException {
+        try {
+            Reflection.forName("de.cosmocode.Missing");
+            Assert.fail("Missing class found");
+        } catch (ClassNotFoundException e) {
+            Reflection.forName("de.cosmocode.Missing");
+        }
+    }
+
+    /**
+     * Tests {@link Reflection#forNames(Iterable)}.
+     */
+    @Test
+    public void forNames() {
+        final Map<String, Class<?>> classes = Reflection.forNames(ImmutableList.of(
+            "java.util.List", "de.cosmocode.Missing", "java.util.ArrayList"));
+        Assert.assertEquals(ImmutableMap.<String, Class<?>>of(
+            "java.util.List", List.class, "java.util.ArrayList", ArrayList.class
+        ), classes);
+        Assert.assertEquals(ImmutableList.of("java.util.List", "java.util.ArrayList"), 
+            ImmutableList.copyOf(classes.keySet()));
+    }
+
+    /**
+     * Tests {@link Reflection#accessors(Class)}.
+     */
+    @Test
+    public void accessors() {
+        final Accessors<Bean> accessors = Reflection.accessors(Bean.class);
+        Assert.assertSame(accessors, Reflection.accessors(Bean.class));
+        Assert.assertEquals(ImmutableSet.of("name", "size", "field"), accessors.getNames());
+        Assert.assertNull(accessors.get("constant"));
+        Assert.assertTrue(accessors.get("name").isWritable());
+        Assert.assertFalse(accessors.get("size").isWritable());
+        Assert.assertEquals(int.class, accessors.get("size").getType());
+    }
+
+    /**
+     * Tests {@link Reflection#releaseAccessors(ClassLoader)}.
+     */
+    @Test
+    public void releaseAccessors() {
+        final Accessors<Bean> accessors = Reflection.accessors(Bean.class);
+        final Accessors<String> bootstrap = Reflection.accessors(String.class);
+        Reflection.releaseAccessors(Bean.class.getClassLoader());
+        Assert.assertNotSame(accessors, Reflection.accessors(Bean.class));
+        Assert.assertEquals(accessors.getNames(), Reflection.accessors(Bean.class).getNames());
+        Assert.assertSame(bootstrap, Reflection.accessors(String.class));
+    }
+
+    /**
+     * Tests {@link Accessor#get(Object)} and {@link Accessor#set(Object, Object)}.
+     */
+    @Test
+    public void accessorGetAndSet() {
+        final Accessors<Bean> accessors = Reflection.accessors(Bean.class);
+        final Bean bean = new Bean();
+        accessors.get("name").set(bean, "test");
+        accessors.get("field").set(bean, "value");
+        Assert.assertEquals("test", accessors.get("name").apply(bean));
+        Assert.assertEquals("value", bean.field);
+        Assert.assertEquals(4, accessors.get("size").get(bean));
+    }
+
+    /**
+     * Tests {@link Accessor#set(Object, Object)} on a read-only property.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void accessorSetReadOnly() {
+        Reflection.accessors(Bean.class).get("size").set(new Bean(), 1);
+    }
+
+    /**
+     * Tests {@link Accessors#toMap(Object)}.
+     */
+    @Test
+    public void accessorsToMap() {
+        final Bean bean = new Bean();
+        bean.setName("test");
+        final Map<String, Object> map = Reflection.accessors(Bean.class).toMap(bean);
+        Assert.assertEquals("test", map.get("name"));
+        Assert.assertEquals(4, map.get("size"));
+        Assert.assertTrue(map.containsKey("field"));
+        Assert.assertNull(map.get("field"));
+    }
+
+    /**
+     * A simple bean for the accessor tests.
+     */
+    public static final class Bean {
+
+        public static final String CONSTANT = "constant";
+
+        public String field;
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getSize() {
+            return 4;
+        }
+
+    }
+
 }